@@ -2,23 +2,40 @@ package com.arkflame.hyessentials;
 
 import com.arkflame.hyessentials.config.ConfigManager;
 import com.arkflame.hyessentials.config.LanguageManager;
+import com.arkflame.hyessentials.data.PlayerSession;
 import com.arkflame.hyessentials.economy.DummyEconomy;
 import com.arkflame.hyessentials.economy.IEconomy;
 import com.arkflame.hyessentials.managers.*;
+import com.arkflame.hyessentials.modules.*;
+import com.arkflame.hyessentials.storage.FlatFileStorageProvider;
+import com.arkflame.hyessentials.storage.SqlStorageProvider;
+import com.arkflame.hyessentials.storage.StorageProvider;
+import com.arkflame.hyessentials.tasks.ExpiryService;
+import com.arkflame.hyessentials.tasks.StartupOrchestrator;
+import com.arkflame.hyessentials.tasks.TaskPriority;
 import com.arkflame.hyessentials.tasks.TaskRunner;
+import com.arkflame.hyessentials.tasks.WriteBehindFlusher;
+import com.arkflame.hyessentials.util.ColorCodec;
 import com.hypixel.hytale.server.core.HytaleServer;
 import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
 import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.event.events.player.PlayerChatEvent;
 import com.hypixel.hytale.server.core.event.events.player.PlayerDisconnectEvent;
 import com.hypixel.hytale.server.core.event.events.player.PlayerReadyEvent;
-import com.hypixel.hytale.server.core.event.events.player.
+import com.hypixel.hytale.server.core.event.events.player.PlayerConnectEvent;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.universe.PlayerRef;
-import com.hypixel.hytale.server.core.universe.Universe;
 
+import java.io.IOException;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
 
 import com.arkflame.hyessentials.commands.*;
 
@@ -32,10 +49,16 @@ public class HyEssentials extends JavaPlugin {
     
     private static HyEssentials instance;
     
+    // How long setup waits for data loads before letting players in anyway
+    private static final long STARTUP_TIMEOUT_SECONDS = 30;
+    
     // Core Systems
     private TaskRunner taskRunner;
+    private ExpiryService expiryService;
+    private WriteBehindFlusher writeBehindFlusher;
     private ConfigManager configManager;
     private LanguageManager languageManager;
+    private StorageProvider storage;
     
     // Managers
     private PermissionManager permissionManager;
@@ -49,6 +72,7 @@ public class HyEssentials extends JavaPlugin {
     private MuteManager muteManager;
     private IgnoreManager ignoreManager;
     private BackManager backManager;
+    private SessionManager sessionManager;
     
     // Economy
     private IEconomy economy;
@@ -67,23 +91,38 @@ public class HyEssentials extends JavaPlugin {
         getLogger().atInfo().log("===================================");
         
         // Initialize core systems
-        initializeCoreSystem();
+        StartupOrchestrator startup = new StartupOrchestrator(this);
+        startup.runTimed("core", this::initializeCoreSystem);
         
-        // Initialize managers
-        initializeManagers();
+        // Initialize managers, their data loads start in parallel here
+        startup.runTimed("managers", () -> initializeManagers(startup));
+        startup.start();
         
         // Initialize economy
-        initializeEconomy();
+        startup.runTimed("economy", this::initializeEconomy);
         
         // Load modules
-        initializeModules();
+        startup.runTimed("modules", this::initializeModules);
         
         // Register commands
-        registerCommands();
+        startup.runTimed("commands", this::registerCommands);
+        
+        // Don't let players in before the data commands rely on is there
+        if (!startup.awaitReady(STARTUP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            getLogger().atWarning().log("Continuing startup with data still loading");
+        }
+        
+        // Only nearby home queries need offline players' homes, so the full scan doesn't hold up startup
+        homeManager.indexStoredHomes().whenComplete((result, error) -> {
+            if (error != null) {
+                getLogger().atWarning().withCause(error).log("Failed to index stored homes, nearby queries only cover loaded players");
+            }
+        });
         
         // Register events
-        registerEvents();
+        startup.runTimed("events", this::registerEvents);
         
+        startup.logTimings();
         long loadTime = System.currentTimeMillis() - startTime;
         getLogger().atInfo().log("HyEssentials loaded successfully in " + loadTime + "ms!");
         getLogger().atInfo().log("===================================");
@@ -93,9 +132,8 @@ public class HyEssentials extends JavaPlugin {
     protected void shutdown() {
     	getLogger().atInfo().log("Shutting down HyEssentials...");
         
-        // Save all data
-        if (userDataManager != null) {
-            userDataManager.saveAll();
+        if (writeBehindFlusher != null) {
+            writeBehindFlusher.stop();
         }
         
         // Disable all modules
@@ -103,11 +141,30 @@ public class HyEssentials extends JavaPlugin {
             moduleManager.disableAll();
         }
         
-        // Shutdown task runner
+        if (expiryService != null) {
+            expiryService.shutdown();
+        }
+        
+        // Shutdown task runner, waits for queued saves to finish
         if (taskRunner != null) {
             taskRunner.shutdown();
         }
         
+        // Write whatever is still dirty and sync it before the stores close
+        if (writeBehindFlusher != null) {
+            writeBehindFlusher.flushAll(true);
+        }
+        if (userDataManager != null) {
+            userDataManager.close();
+        }
+        if (storage != null) {
+            try {
+                storage.close();
+            } catch (IOException e) {
+                getLogger().atWarning().withCause(e).log("Failed to close " + storage.getName() + " storage");
+            }
+        }
+        
         getLogger().atInfo.log("HyEssentials disabled successfully!");
     }
     
@@ -117,9 +174,21 @@ public class HyEssentials extends JavaPlugin {
         // Task runner for async operations
         this.taskRunner = new TaskRunner(this);
         
+        // Single timing wheel for mutes, cooldowns and teleport requests
+        this.expiryService = new ExpiryService(this, 100);
+        
+        // Periodic batched saves of dirty data
+        this.writeBehindFlusher = new WriteBehindFlusher(this);
+        
         // Configuration manager
         this.configManager = new ConfigManager(this);
         this.configManager.loadConfig();
+        this.taskRunner.setIoConcurrency(configManager.getMaxConcurrentIo());
+        this.taskRunner.getMetrics().setSlowThreshold(configManager.getSlowTaskThreshold());
+        this.taskRunner.configureTickQueue(configManager.getSyncTickMillis(), configManager.getSyncTickBudgetMicros());
+        
+        // Storage backend every manager persists through
+        this.storage = createStorage(configManager.getStorageType());
         
         // Language manager
         this.languageManager = new LanguageManager(this);
@@ -128,7 +197,23 @@ public class HyEssentials extends JavaPlugin {
         getLogger().atInfo().log("Core systems initialized!");
     }
     
-    private void initializeManagers() {
+    private StorageProvider createStorage(String type) {
+        Path folder = getDataDirectory().resolve("storage");
+        try {
+            if ("h2".equalsIgnoreCase(type) || "sql".equalsIgnoreCase(type)) {
+                try {
+                    return new SqlStorageProvider(folder, configManager.getStoragePoolSize());
+                } catch (IOException e) {
+                    getLogger().atWarning().log("Could not open the H2 database, falling back to flat files: " + e.getMessage());
+                }
+            }
+            return new FlatFileStorageProvider(folder);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create storage folder " + folder, e);
+        }
+    }
+    
+    private void initializeManagers(StartupOrchestrator startup) {
     	getLogger().atInfo().log("Initializing managers...");
         
         this.permissionManager = new PermissionManager(this);
@@ -139,15 +224,35 @@ public class HyEssentials extends JavaPlugin {
         this.spawnManager = new SpawnManager(this);
         this.kitManager = new KitManager(this);
         this.chatManager = new ChatManager(this);
-        this.muteManager = new MuteManager();
-        this.ignoreManager = new IgnoreManager();
-        this.backManager = new BackManager();
-        
-        // Load data
-        permissionManager.load();
-        warpManager.load();
-        spawnManager.load();
-        kitManager.load();
+        this.muteManager = new MuteManager(this);
+        this.ignoreManager = new IgnoreManager(this);
+        this.backManager = new BackManager(this);
+        this.sessionManager = new SessionManager(this);
+        
+        // Load data, none of these read each other's data so they run side by side
+        // Warps and kits load with their lazy modules on first use
+        startup.register("permissions", permissionManager::load);
+        startup.register("spawn", spawnManager::load);
+        startup.register("ignores", ignoreManager::load);
+        
+        writeBehindFlusher.register("userdata", userDataManager::flush);
+        writeBehindFlusher.register("warps", warpManager::flush);
+        writeBehindFlusher.register("kits", kitManager::flush);
+        writeBehindFlusher.register("spawn", spawnManager::flush);
+        writeBehindFlusher.register("permissions", permissionManager::flush);
+        writeBehindFlusher.register("ignores", ignoreManager::flush);
+        
+        // A flush before a load finished, or after it failed, would write partial data over what is stored
+        startup.register("flusher", () -> {
+            for (String name : List.of("permissions", "spawn", "ignores")) {
+                if (startup.hasFailed(name)) {
+                    getLogger().atWarning().log("Not saving " + name + " this session, stored data could not be loaded");
+                    writeBehindFlusher.unregister(name);
+                }
+            }
+            writeBehindFlusher.start(configManager.getFlushIntervalMillis(), configManager.getMaxDataLossMillis());
+            return CompletableFuture.completedFuture(null);
+        }, "permissions", "spawn", "ignores");
         
         getLogger().atInfo().log("Managers initialized!");
     }
@@ -183,10 +288,11 @@ public class HyEssentials extends JavaPlugin {
         moduleManager.registerModule(new BasicCommandsModule(this));
         moduleManager.registerModule(new TimeModule(this));
         
-        // Enable all modules
+        // Enable eager modules, lazy ones load on first use
         moduleManager.enableAll();
         
-        getLogger().atInfo().log("Modules loaded: " + moduleManager.getEnabledModules().size());
+        getLogger().atInfo().log("Modules loaded: " + moduleManager.getEnabledModules().size()
+            + ", on first use: " + moduleManager.getLazyModules().size());
     }
     
     private void registerCommands() {
@@ -207,11 +313,6 @@ public class HyEssentials extends JavaPlugin {
         getCommandRegistry().registerCommand(new DelhomeCommand(this));
         getCommandRegistry().registerCommand(new HomesCommand(this));
         
-        // Warp commands
-        getCommandRegistry().registerCommand(new WarpCommand(this));
-        getCommandRegistry().registerCommand(new SetwarpCommand(this));
-        getCommandRegistry().registerCommand(new DelwarpCommand(this));
-        
         // Spawn commands
         getCommandRegistry().registerCommand(new SpawnCommand(this));
         getCommandRegistry().registerCommand(new SetspawnCommand(this));
@@ -241,16 +342,19 @@ public class HyEssentials extends JavaPlugin {
         getCommandRegistry().registerCommand(new UnmuteCommand(this));
         getCommandRegistry().registerCommand(new IgnoreCommand(this));
         
-        // Kit commands
-        getCommandRegistry().registerCommand(new KitCommand(this));
-        getCommandRegistry().registerCommand(new CreatekitCommand(this));
-        getCommandRegistry().registerCommand(new DelkitCommand(this));
-        
         // Basic commands
         getCommandRegistry().registerCommand(new HealCommand(this));
         getCommandRegistry().registerCommand(new FeedCommand(this));
         getCommandRegistry().registerCommand(new ClearCommand(this));
         
+        // Admin commands
+        getCommandRegistry().registerCommand(new TimingsCommand(this));
+        
+        // Module commands, stubs until their module is enabled
+        for (CommandBase stub : moduleManager.createCommandStubs()) {
+            getCommandRegistry().registerCommand(stub);
+        }
+        
         getLogger().atInfo().log("Commands registered!");
     }
     
@@ -258,6 +362,7 @@ public class HyEssentials extends JavaPlugin {
     	getLogger().atInfo().log("Registering event listeners...");
         
         // Player events
+        getEventRegistry().registerGlobal(PlayerConnectEvent.class, this::onPlayerConnect);
         getEventRegistry().registerGlobal(PlayerReadyEvent.class, this::onPlayerJoin);
         getEventRegistry().registerGlobal(PlayerDisconnectEvent.class, this::onPlayerQuit);
         getEventRegistry().registerGlobal(PlayerChatEvent.class, this::onPlayerChat);
@@ -272,40 +377,47 @@ public class HyEssentials extends JavaPlugin {
     
     // Event Handlers
     
+    private void onPlayerConnect(PlayerConnectEvent event) {
+        // Earliest point we know the player, data is usually loaded before they are ready
+        userDataManager.prefetch(event.getPlayerRef().getUuid());
+    }
+    
     private void onPlayerJoin(PlayerReadyEvent event) {
         Player player = event.getPlayer();
         UUID uuid = player.getPlayerRef().getUuid();
         
-        // Load player data asynchronously
-        taskRunner.runAsync(() -> {
-            userDataManager.loadUser(uuid);
-            
+        // Locale is resolved once here and kept in the session
+        PlayerSession session = sessionManager.open(player.getPlayerRef());
+        
+        // Joins the prefetch started on connect, or loads now if there was none
+        userDataManager.loadUser(uuid).thenAccept(data -> {
             // Check if first join
-            boolean isFirstJoin = userDataManager.isFirstJoin(uuid);
+            boolean isFirstJoin = data.isFirstJoin();
             
             // Sync back to main thread for messages
-            taskRunner.runSync(() -> {
+            taskRunner.runSync("join.messages", TaskPriority.LOW, () -> {
+                String name = player.getDisplayName();
+                
                 // Custom join message
                 if (configManager.isJoinMessageEnabled()) {
-                    String joinMsg = languageManager.getMessage(player, "join_message")
-                        .replace("{player}", player.getDisplayName());
-                    broadcastMessage(joinMsg);
+                    broadcastLocalized("join_message", text -> text.replace("{player}", name));
                 }
                 
                 // First join message
                 if (isFirstJoin && configManager.isFirstJoinEnabled()) {
-                    String firstJoinMsg = languageManager.getMessage(player, "first_join")
-                        .replace("{player}", player.getDisplayName());
-                    broadcastMessage(firstJoinMsg);
-                    userDataManager.setFirstJoin(uuid, false);
+                    broadcastLocalized("first_join", text -> text.replace("{player}", name));
+                    data.setFirstJoin(false);
                 }
                 
                 // MOTD
                 if (configManager.isMotdEnabled()) {
-                    Message motd = Message.parse(languageManager.getMessage(player, "motd"));
+                    Message motd = ColorCodec.parseCached(languageManager.getMessage(session.getLocale(), "motd"));
                     player.sendMessage(motd);
                 }
             });
+        }).exceptionally(t -> {
+            getLogger().atWarning().log("Failed to load user data for " + uuid + ": " + t);
+            return null;
         });
     }
     
@@ -313,36 +425,39 @@ public class HyEssentials extends JavaPlugin {
         PlayerRef player = event.getPlayerRef();
         UUID uuid = player.getUuid();
         
+        sessionManager.close(uuid);
+        
         // Custom leave message
         if (configManager.isLeaveMessageEnabled()) {
-            String leaveMsg = languageManager.getMessage(player, "leave_message")
-                .replace("{player}", player.getName());
-            broadcastMessage(leaveMsg);
+            String name = player.getUsername();
+            broadcastLocalized("leave_message", text -> text.replace("{player}", name));
         }
         
-        // Save player data asynchronously
-        taskRunner.runAsync(() -> {
-            userDataManager.saveUser(uuid);
-        });
+        // Save player data asynchronously, the cache decides how long it stays in memory
+        userDataManager.unloadUser(uuid);
         
-        // Cancel any pending teleports
-        teleportManager.cancelTeleport(uuid);
+        // Pending teleports and resolved permissions went with the session
     }
     
     private void onPlayerChat(PlayerChatEvent event) {
         PlayerRef player = event.getSender();
         UUID uuid = player.getUuid();
+        // One lookup, mute state and locale are read straight off the session
+        PlayerSession session = sessionManager.getSession(uuid);
         
         // Check if muted
-        if (muteManager.isMuted(uuid)) {
+        if (session != null ? muteManager.isMuted(session) : muteManager.isMuted(uuid)) {
             event.setCancelled(true);
-            player.sendMessage(languageManager.getMessage(player, "muted"));
+            String locale = session != null ? session.getLocale() : languageManager.getDefaultLanguage();
+            player.sendMessage(ColorCodec.parseCached(languageManager.getMessage(locale, "muted")));
             return;
         }
         
-        // Format chat message
-        String formatted = chatManager.formatChat(player, event.getMessage());
-        event.setMessage(formatted);
+        // Deliver only to players not ignoring the sender
+        ignoreManager.filterRecipients(uuid, event.getTargets());
+        
+        // Format chat message with the session looked up above
+        event.setFormatter((sender, message) -> chatManager.formatChat(sender, session, message));
     }
     
     /*
@@ -379,7 +494,7 @@ public class HyEssentials extends JavaPlugin {
     
     private void onPlayerDeath(PlayerDeathEvent event) {
         Player player = event.getPlayer();
-        Vector3 deathLocation = player.getPosition();
+        Location deathLocation = TeleportManager.locationOf(player);
         
         // Store death location for /back
         backManager.addLocation(player.getUniqueId(), deathLocation);
@@ -390,9 +505,9 @@ public class HyEssentials extends JavaPlugin {
         
         // Teleport to spawn if configured
         if (configManager.isRespawnAtSpawn()) {
-            Vector3 spawn = spawnManager.getSpawn();
+            Location spawn = spawnManager.getSpawn();
             if (spawn != null) {
-                event.setRespawnLocation(spawn);
+                event.setRespawnLocation(spawn.toVector());
             }
         }
     }
@@ -400,10 +515,16 @@ public class HyEssentials extends JavaPlugin {
     
     // Utility Methods
     
-    private void broadcastMessage(String message) {
-        // Broadcast to all online players
-    	Message send = Message.parse(message);
-    	Universe.get().sendMessage(send);
+    /**
+     * Broadcast a language entry, rendered once per locale and fanned out to that locale's players
+     */
+    public void broadcastLocalized(String key, UnaryOperator<String> placeholders) {
+        for (Map.Entry<String, Set<PlayerRef>> bucket : sessionManager.getLocaleBuckets().entrySet()) {
+            Message send = ColorCodec.parse(placeholders.apply(languageManager.getMessage(bucket.getKey(), key)));
+            for (PlayerRef recipient : bucket.getValue()) {
+                recipient.sendMessage(send);
+            }
+        }
     }
     
     // Getters
@@ -416,10 +537,22 @@ public class HyEssentials extends JavaPlugin {
         return taskRunner;
     }
     
+    public ExpiryService getExpiryService() {
+        return expiryService;
+    }
+    
+    public WriteBehindFlusher getWriteBehindFlusher() {
+        return writeBehindFlusher;
+    }
+    
     public Path getFolder() {
     	return getDataDirectory();
     }
     
+    public StorageProvider getStorage() {
+        return storage;
+    }
+    
     public ConfigManager getConfigManager() {
         return configManager;
     }
@@ -472,6 +605,10 @@ public class HyEssentials extends JavaPlugin {
         return backManager;
     }
     
+    public SessionManager getSessionManager() {
+        return sessionManager;
+    }
+    
     public IEconomy getEconomy() {
         return economy;
     }
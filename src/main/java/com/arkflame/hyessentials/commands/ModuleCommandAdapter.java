@@ -0,0 +1,60 @@
+package com.arkflame.hyessentials.commands;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.arkflame.hyessentials.HyEssentials;
+import com.arkflame.hyessentials.modules.ModuleCommand;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+
+/**
+ * ModuleCommandAdapter - Runs a regular command as a module command, so a lazy module's stub
+ * enables the module before it. Lives with the commands since executeSync is only reachable here.
+ */
+public final class ModuleCommandAdapter implements ModuleCommand {
+    private final String name;
+    private final String description;
+    private final Consumer<CommandContext> executor;
+
+    private ModuleCommandAdapter(CommandBase command, Consumer<CommandContext> executor) {
+        this.name = command.getName();
+        this.description = command.getDescription();
+        this.executor = executor;
+    }
+
+    public static List<ModuleCommand> warpCommands(HyEssentials plugin) {
+        WarpCommand warp = new WarpCommand(plugin);
+        SetwarpCommand setwarp = new SetwarpCommand(plugin);
+        DelwarpCommand delwarp = new DelwarpCommand(plugin);
+        return List.of(
+            new ModuleCommandAdapter(warp, warp::executeSync),
+            new ModuleCommandAdapter(setwarp, setwarp::executeSync),
+            new ModuleCommandAdapter(delwarp, delwarp::executeSync));
+    }
+
+    public static List<ModuleCommand> kitCommands(HyEssentials plugin) {
+        KitCommand kit = new KitCommand(plugin);
+        CreatekitCommand createkit = new CreatekitCommand(plugin);
+        DelkitCommand delkit = new DelkitCommand(plugin);
+        return List.of(
+            new ModuleCommandAdapter(kit, kit::executeSync),
+            new ModuleCommandAdapter(createkit, createkit::executeSync),
+            new ModuleCommandAdapter(delkit, delkit::executeSync));
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public void execute(CommandContext context) {
+        executor.accept(context);
+    }
+}
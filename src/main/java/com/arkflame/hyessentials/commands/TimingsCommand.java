@@ -0,0 +1,60 @@
+package com.arkflame.hyessentials.commands;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nonnull;
+
+import com.arkflame.hyessentials.HyEssentials;
+import com.arkflame.hyessentials.storage.UserCache;
+import com.arkflame.hyessentials.tasks.TaskMetrics;
+import com.arkflame.hyessentials.tasks.TickQueue;
+import com.arkflame.hyessentials.util.ColorCodec;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+
+/**
+ * /timings - Shows queue wait and run time of HyEssentials tasks per label and user cache counters
+ */
+public class TimingsCommand extends CommandBase {
+    private static final int MAX_LINES = 15;
+    
+    private final HyEssentials plugin;
+    
+    public TimingsCommand(HyEssentials plugin) {
+        super("timings", "Show HyEssentials task timings");
+        this.plugin = plugin;
+    }
+    
+    @Override
+    protected void executeSync(@Nonnull CommandContext context) {
+        if (!plugin.getPermissionManager().hasPermission(context.sender().getUuid(), "essentials.timings")) {
+            context.sendMessage(ColorCodec.parseCached(plugin.getLanguageManager().getMessage(
+                plugin.getSessionManager().getLocale(context.sender().getUuid()), "no_permission")));
+            return;
+        }
+        
+        TaskMetrics metrics = plugin.getTaskRunner().getMetrics();
+        List<TaskMetrics.Snapshot> snapshots = metrics.snapshot();
+        
+        TickQueue tickQueue = plugin.getTaskRunner().getTickQueue();
+        context.sendMessage(ColorCodec.parse("&6HyEssentials timings &7(queued: " + metrics.getQueueDepth()
+            + ", sync carry-over: " + tickQueue.getLastCarryOver() + ", peak: " + tickQueue.getPeakCarryOver() + ")"));
+        UserCache.Stats cache = plugin.getUserDataManager().getCacheStats();
+        context.sendMessage(ColorCodec.parse("&7user cache: &f" + cache.pinned() + " &7online, &f" + cache.cached()
+            + "/" + cache.maximumSize() + " &7offline, hit rate &f" + String.format("%.1f%%", cache.hitRate() * 100)
+            + " &7evicted &f" + cache.evictions() + " &7rejected &f" + cache.rejections()));
+        context.sendMessage(ColorCodec.parse("&7label: count | wait p50/p99 | run p50/p99/max (ms)"));
+        
+        for (int i = 0; i < Math.min(MAX_LINES, snapshots.size()); i++) {
+            TaskMetrics.Snapshot s = snapshots.get(i);
+            context.sendMessage(ColorCodec.parse("&e" + s.label() + "&7: &f" + s.count()
+                + " &7| &f" + millis(s.waitP50Nanos()) + "/" + millis(s.waitP99Nanos())
+                + " &7| &f" + millis(s.runP50Nanos()) + "/" + millis(s.runP99Nanos()) + "/" + millis(s.runMaxNanos())));
+        }
+    }
+    
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+}
@@ -0,0 +1,33 @@
+package com.arkflame.hyessentials.data;
+
+import java.util.Set;
+
+/**
+ * AccessCache - Names a player may use, e.g. warps or kits, for filtering completions
+ * A cached set belongs to one permissions version of the player and one generation of
+ * the names, it is recomputed once either moves on.
+ */
+public final class AccessCache {
+    private volatile Snapshot snapshot;
+
+    /**
+     * Cached names if still current, null if they must be computed again
+     */
+    public Set<String> get(int permissionsVersion, int generation) {
+        Snapshot current = snapshot;
+        if (current != null && current.permissionsVersion == permissionsVersion && current.generation == generation) {
+            return current.names;
+        }
+        return null;
+    }
+
+    /**
+     * Remember names computed at the given versions, read before computing them
+     * so a change that happens meanwhile makes the next get miss
+     */
+    public void put(int permissionsVersion, int generation, Set<String> names) {
+        snapshot = new Snapshot(permissionsVersion, generation, names);
+    }
+
+    private record Snapshot(int permissionsVersion, int generation, Set<String> names) {}
+}
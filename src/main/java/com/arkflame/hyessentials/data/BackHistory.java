@@ -0,0 +1,91 @@
+package com.arkflame.hyessentials.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BackHistory - Fixed size ring of a player's previous locations
+ * Locations are copied into one flat int array in their packed form, recording one
+ * allocates nothing and the oldest entry is overwritten once the ring is full.
+ * One monitor per player, teleports of the same player are the only contention.
+ */
+public final class BackHistory {
+    private static final int STRIDE = 5;
+    
+    // world, x, y, z, rotation per slot
+    private final int[] slots;
+    private final int capacity;
+    // Slot the next push writes to
+    private int head;
+    private int size;
+
+    public BackHistory(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.slots = new int[this.capacity * STRIDE];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Record a location as the most recent one
+     */
+    public synchronized void push(Location location) {
+        int base = head * STRIDE;
+        slots[base] = location.getWorld();
+        slots[base + 1] = location.packedX();
+        slots[base + 2] = location.packedY();
+        slots[base + 3] = location.packedZ();
+        slots[base + 4] = location.packedRotation();
+        head = (head + 1) % capacity;
+        if (size < capacity) {
+            size++;
+        }
+    }
+
+    /**
+     * Most recent location without removing it, null when empty
+     */
+    public synchronized Location peek() {
+        return size == 0 ? null : entryAt(1);
+    }
+
+    /**
+     * Remove and return the most recent location, null when empty
+     */
+    public synchronized Location pop() {
+        if (size == 0) {
+            return null;
+        }
+        Location location = entryAt(1);
+        head = (head - 1 + capacity) % capacity;
+        size--;
+        return location;
+    }
+
+    /**
+     * Every location, most recent first
+     */
+    public synchronized List<Location> entries() {
+        List<Location> entries = new ArrayList<>(size);
+        for (int age = 1; age <= size; age++) {
+            entries.add(entryAt(age));
+        }
+        return entries;
+    }
+
+    // Caller holds the lock, age 1 is the most recent entry
+    private Location entryAt(int age) {
+        int base = ((head - age + capacity) % capacity) * STRIDE;
+        return Location.fromPacked(slots[base], slots[base + 1], slots[base + 2], slots[base + 3], slots[base + 4]);
+    }
+}
@@ -0,0 +1,47 @@
+package com.arkflame.hyessentials.data;
+
+import java.util.List;
+
+import com.hypixel.hytale.server.core.inventory.ItemStack;
+
+public class Kit {
+    private final String name;
+    private List<ItemStack> items;
+    private long cooldown; // in milliseconds
+    private double price;
+    
+    public Kit(String name, List<ItemStack> items, long cooldown, double price) {
+        this.name = name;
+        this.items = items;
+        this.cooldown = cooldown;
+        this.price = price;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public List<ItemStack> getItems() {
+        return items;
+    }
+    
+    public void setItems(List<ItemStack> items) {
+        this.items = items;
+    }
+    
+    public long getCooldown() {
+        return cooldown;
+    }
+    
+    public void setCooldown(long cooldown) {
+        this.cooldown = cooldown;
+    }
+    
+    public double getPrice() {
+        return price;
+    }
+    
+    public void setPrice(double price) {
+        this.price = price;
+    }
+}
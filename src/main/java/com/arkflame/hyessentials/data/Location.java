@@ -0,0 +1,214 @@
+package com.arkflame.hyessentials.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.arkflame.hyessentials.util.WorldRegistry;
+import com.hypixel.hytale.builtin.hytalegenerator.fields.FastNoiseLite.Vector3;
+
+/**
+ * Location - Immutable position in a world with a facing direction
+ * Coordinates are fixed point with 1/32 block precision and yaw and pitch share one int,
+ * so a location is five ints: 32 bytes on the heap and 16 bytes plus the world when encoded.
+ */
+public final class Location {
+    private static final int SHIFT = 5;
+    /** Fixed point steps per block */
+    public static final int SCALE = 1 << SHIFT;
+
+    private static final double MAX_COORDINATE = Integer.MAX_VALUE / (double) SCALE;
+    private static final float ANGLE_STEPS = 65536f / 360f;
+
+    private final int world;
+    private final int x;
+    private final int y;
+    private final int z;
+    // Yaw in the high 16 bits, pitch in the low 16 bits, both in 1/65536 turns
+    private final int rotation;
+
+    private Location(int world, int x, int y, int z, int rotation) {
+        this.world = world;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.rotation = rotation;
+    }
+
+    /**
+     * @param rotation pitch, yaw and roll in radians, as entities report it
+     */
+    public static Location of(String world, Vector3 position, Vector3 rotation) {
+        return of(world, position, (float) Math.toDegrees(rotation.y), (float) Math.toDegrees(rotation.x));
+    }
+
+    public static Location of(String world, Vector3 position, float yaw, float pitch) {
+        return of(WorldRegistry.get().intern(world), position.x, position.y, position.z, yaw, pitch);
+    }
+
+    /**
+     * @param world id from {@link WorldRegistry}, {@link WorldRegistry#UNKNOWN} if not known
+     */
+    public static Location of(int world, double x, double y, double z, float yaw, float pitch) {
+        return new Location(world, toFixed(x), toFixed(y), toFixed(z), (packAngle(yaw) << 16) | packAngle(pitch));
+    }
+
+    public int getWorld() {
+        return world;
+    }
+
+    public String getWorldName() {
+        return WorldRegistry.get().nameOf(world);
+    }
+
+    public double getX() {
+        return x / (double) SCALE;
+    }
+
+    public double getY() {
+        return y / (double) SCALE;
+    }
+
+    public double getZ() {
+        return z / (double) SCALE;
+    }
+
+    /**
+     * Block coordinates, exact since they are the fixed point value shifted down
+     */
+    public int getBlockX() {
+        return x >> SHIFT;
+    }
+
+    public int getBlockY() {
+        return y >> SHIFT;
+    }
+
+    public int getBlockZ() {
+        return z >> SHIFT;
+    }
+
+    /** Yaw in degrees, in [0, 360) */
+    public float getYaw() {
+        return (rotation >>> 16) / ANGLE_STEPS;
+    }
+
+    /** Pitch in degrees, in [-180, 180) */
+    public float getPitch() {
+        return ((short) rotation) / ANGLE_STEPS;
+    }
+
+    public Vector3 toVector() {
+        return new Vector3(getX(), getY(), getZ());
+    }
+
+    /**
+     * Pitch, yaw and roll in radians, the form entities take it in
+     */
+    public Vector3 toRotation() {
+        return new Vector3(Math.toRadians(getPitch()), Math.toRadians(getYaw()), 0);
+    }
+
+    /**
+     * Squared distance in blocks, infinite across different worlds
+     */
+    public double distanceSquared(Location other) {
+        if (world != other.world) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double dx = getX() - other.getX();
+        double dy = getY() - other.getY();
+        double dz = getZ() - other.getZ();
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /**
+     * Stable encoding, the world is written by name since ids only live as long as the process
+     */
+    public void write(DataOutputStream out) throws IOException {
+        String worldName = getWorldName();
+        out.writeBoolean(worldName != null);
+        if (worldName != null) {
+            out.writeUTF(worldName);
+        }
+        writeCoordinates(out);
+    }
+
+    public static Location read(DataInputStream in) throws IOException {
+        int world = in.readBoolean() ? WorldRegistry.get().intern(in.readUTF()) : WorldRegistry.UNKNOWN;
+        return readCoordinates(in, world);
+    }
+
+    /**
+     * The 16 bytes after the world, for formats that write worlds once in a table
+     */
+    public void writeCoordinates(DataOutputStream out) throws IOException {
+        out.writeInt(x);
+        out.writeInt(y);
+        out.writeInt(z);
+        out.writeInt(rotation);
+    }
+
+    public static Location readCoordinates(DataInputStream in, int world) throws IOException {
+        return new Location(world, in.readInt(), in.readInt(), in.readInt(), in.readInt());
+    }
+
+    // Raw packed fields, for containers in this package that store locations as primitives
+
+    static Location fromPacked(int world, int x, int y, int z, int rotation) {
+        return new Location(world, x, y, z, rotation);
+    }
+
+    int packedX() {
+        return x;
+    }
+
+    int packedY() {
+        return y;
+    }
+
+    int packedZ() {
+        return z;
+    }
+
+    int packedRotation() {
+        return rotation;
+    }
+
+    private static int toFixed(double coordinate) {
+        if (!(Math.abs(coordinate) < MAX_COORDINATE)) {
+            throw new IllegalArgumentException("Coordinate out of range: " + coordinate);
+        }
+        return (int) Math.round(coordinate * SCALE);
+    }
+
+    private static int packAngle(float degrees) {
+        return Math.round(degrees * ANGLE_STEPS) & 0xFFFF;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Location other)) {
+            return false;
+        }
+        return world == other.world && x == other.x && y == other.y && z == other.z && rotation == other.rotation;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = world;
+        result = 31 * result + x;
+        result = 31 * result + y;
+        result = 31 * result + z;
+        return 31 * result + rotation;
+    }
+
+    @Override
+    public String toString() {
+        return "Location{" + getWorldName() + ", " + getX() + ", " + getY() + ", " + getZ()
+            + ", yaw=" + getYaw() + ", pitch=" + getPitch() + "}";
+    }
+}
@@ -0,0 +1,100 @@
+package com.arkflame.hyessentials.data;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.arkflame.hyessentials.permissions.PermissionSet;
+import com.arkflame.hyessentials.permissions.PermissionTrie;
+
+public class PermissionGroup {
+    private final String name;
+    private int priority;
+    private final PermissionSet permissions = new PermissionSet();
+    private final List<String> parents = new CopyOnWriteArrayList<>();
+    private String prefix;
+    private String suffix;
+    private String chatFormat;
+    private volatile PermissionTrie compiled;
+    
+    public PermissionGroup(String name, int priority) {
+        this.name = name;
+        this.priority = priority;
+    }
+    
+    /**
+     * Check the nodes declared by this group only, inherited nodes
+     * are resolved by the PermissionManager
+     */
+    public boolean hasPermission(String perm) {
+        PermissionTrie trie = compiled;
+        if (trie == null) {
+            trie = PermissionTrie.compile(permissions.toNames());
+            compiled = trie;
+        }
+        return trie.matches(perm);
+    }
+    
+    public void addPermission(String perm) {
+        permissions.add(perm);
+        compiled = null;
+    }
+    
+    public void removePermission(String perm) {
+        permissions.remove(perm);
+        compiled = null;
+    }
+    
+    public Collection<String> getPermissions() {
+        return permissions.toNames();
+    }
+    
+    public PermissionSet getPermissionSet() {
+        return permissions;
+    }
+    
+    public List<String> getParents() {
+        return parents;
+    }
+    
+    public void setParents(Collection<String> parents) {
+        this.parents.clear();
+        this.parents.addAll(parents);
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public int getPriority() {
+        return priority;
+    }
+    
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+    
+    public String getPrefix() {
+        return prefix;
+    }
+    
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+    
+    public String getSuffix() {
+        return suffix;
+    }
+    
+    public void setSuffix(String suffix) {
+        this.suffix = suffix;
+    }
+    
+    public String getChatFormat() {
+        return chatFormat;
+    }
+    
+    public void setChatFormat(String chatFormat) {
+        this.chatFormat = chatFormat;
+    }
+}
@@ -0,0 +1,127 @@
+package com.arkflame.hyessentials.data;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.arkflame.hyessentials.permissions.ResolvedPermissions;
+import com.hypixel.hytale.server.core.modules.entity.teleport.PendingTeleport;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+
+/**
+ * PlayerSession - State of an online player resolved once at join
+ * Also holds the hot per-player state managers read on every chat or teleport,
+ * so those paths cost one session lookup instead of one map lookup per manager.
+ * Everything here is dropped on quit, what must survive lives in the managers' maps.
+ */
+public class PlayerSession {
+    private final PlayerRef playerRef;
+    private final String locale;
+    private final long joinTime;
+    private final int slot;
+
+    private volatile ResolvedPermissions permissions;
+    private volatile String group;
+    private int permissionsVersion;
+    private volatile boolean muted;
+    private final AtomicReference<PendingTeleport> pendingTeleport = new AtomicReference<>();
+    private final AccessCache warpAccess = new AccessCache();
+    private final AccessCache kitAccess = new AccessCache();
+
+    public PlayerSession(PlayerRef playerRef, String locale, int slot) {
+        this.playerRef = playerRef;
+        this.locale = locale;
+        this.slot = slot;
+        this.joinTime = System.currentTimeMillis();
+    }
+
+    public UUID getUuid() {
+        return playerRef.getUuid();
+    }
+
+    public PlayerRef getPlayerRef() {
+        return playerRef;
+    }
+
+    public String getLocale() {
+        return locale;
+    }
+
+    public long getJoinTime() {
+        return joinTime;
+    }
+
+    /**
+     * Dense index of this player among online players, reused by someone else after quit
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Resolved permissions, null until first checked or after an invalidation
+     */
+    public ResolvedPermissions getPermissions() {
+        return permissions;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    public synchronized int getPermissionsVersion() {
+        return permissionsVersion;
+    }
+
+    /**
+     * Cache permissions resolved at the given version, ignored if invalidated meanwhile
+     */
+    public synchronized void setPermissions(ResolvedPermissions permissions, String group, int version) {
+        if (version == permissionsVersion) {
+            this.permissions = permissions;
+            this.group = group;
+        }
+    }
+
+    public synchronized void invalidatePermissions() {
+        permissionsVersion++;
+        permissions = null;
+        group = null;
+    }
+
+    public boolean isMuted() {
+        return muted;
+    }
+
+    public void setMuted(boolean muted) {
+        this.muted = muted;
+    }
+
+    public PendingTeleport getPendingTeleport() {
+        return pendingTeleport.get();
+    }
+
+    public void setPendingTeleport(PendingTeleport pending) {
+        pendingTeleport.set(pending);
+    }
+
+    /**
+     * Clear the pending teleport only if it is still the given one, true if it was
+     */
+    public boolean completePendingTeleport(PendingTeleport pending) {
+        return pendingTeleport.compareAndSet(pending, null);
+    }
+
+    /**
+     * Warps this player may use, keyed to {@link #getPermissionsVersion()}
+     */
+    public AccessCache getWarpAccess() {
+        return warpAccess;
+    }
+
+    /**
+     * Kits this player may use, keyed to {@link #getPermissionsVersion()}
+     */
+    public AccessCache getKitAccess() {
+        return kitAccess;
+    }
+}
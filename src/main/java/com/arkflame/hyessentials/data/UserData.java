@@ -0,0 +1,82 @@
+package com.arkflame.hyessentials.data;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class UserData {
+    private final UUID uuid;
+    private boolean firstJoin = true;
+    private String nickname;
+    private boolean godMode = false;
+    private boolean flying = false;
+    private String lastMessage; // For /reply
+    // Set on every persisted change, cleared when the write-behind flusher takes a snapshot
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    
+    public UserData(UUID uuid) {
+        this.uuid = uuid;
+    }
+    
+    public UUID getUuid() {
+        return uuid;
+    }
+    
+    public boolean isFirstJoin() {
+        return firstJoin;
+    }
+    
+    public void setFirstJoin(boolean firstJoin) {
+        this.firstJoin = firstJoin;
+        dirty.set(true);
+    }
+    
+    public String getNickname() {
+        return nickname;
+    }
+    
+    public void setNickname(String nickname) {
+        this.nickname = nickname;
+        dirty.set(true);
+    }
+    
+    public boolean isGodMode() {
+        return godMode;
+    }
+    
+    public void setGodMode(boolean godMode) {
+        this.godMode = godMode;
+        dirty.set(true);
+    }
+    
+    public boolean isFlying() {
+        return flying;
+    }
+    
+    public void setFlying(boolean flying) {
+        this.flying = flying;
+        dirty.set(true);
+    }
+    
+    public String getLastMessage() {
+        return lastMessage;
+    }
+    
+    public void setLastMessage(String lastMessage) {
+        this.lastMessage = lastMessage;
+    }
+    
+    public void markDirty() {
+        dirty.set(true);
+    }
+    
+    public boolean isDirty() {
+        return dirty.get();
+    }
+    
+    /**
+     * Clear the dirty flag, returns whether it was set
+     */
+    public boolean clearDirty() {
+        return dirty.getAndSet(false);
+    }
+}
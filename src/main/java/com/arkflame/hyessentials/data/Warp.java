@@ -0,0 +1,23 @@
+package com.arkflame.hyessentials.data;
+
+public class Warp {
+    private final String name;
+    private Location location;
+    
+    public Warp(String name, Location location) {
+        this.name = name;
+        this.location = location;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public Location getLocation() {
+        return location;
+    }
+    
+    public void setLocation(Location location) {
+        this.location = location;
+    }
+}
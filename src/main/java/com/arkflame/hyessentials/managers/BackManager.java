@@ -1,34 +1,77 @@
 package com.arkflame.hyessentials.managers;
 
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
-import com.hypixel.hytale.builtin.hytalegenerator.fields.FastNoiseLite.Vector3;
+import com.arkflame.hyessentials.HyEssentials;
+import com.arkflame.hyessentials.data.BackHistory;
+import com.arkflame.hyessentials.data.Location;
 
 public class BackManager {
-    private final Map<UUID, LinkedList<Vector3>> locationHistory = new ConcurrentHashMap<>();
-    private final int maxHistory = 5;
-    
-    public BackManager() {}
-    
-    public void addLocation(UUID uuid, Vector3 location) {
-        LinkedList<Vector3> history = locationHistory.computeIfAbsent(uuid, k -> new LinkedList<>());
-        history.addFirst(location);
-        
-        if (history.size() > maxHistory) {
-            history.removeLast();
+    private final HyEssentials plugin;
+    private final Map<UUID, BackHistory> locationHistory = new ConcurrentHashMap<>();
+
+    public BackManager(HyEssentials plugin) {
+        this.plugin = plugin;
+    }
+
+    public void addLocation(UUID uuid, Location location) {
+        history(uuid).push(location);
+        plugin.getUserDataManager().markDirty(uuid);
+    }
+
+    /**
+     * Most recent location without consuming it, e.g. to show where /back leads
+     */
+    public Location peekLocation(UUID uuid) {
+        BackHistory history = locationHistory.get(uuid);
+        return history != null ? history.peek() : null;
+    }
+
+    /**
+     * Consume the most recent location, repeated /back walks further into the past
+     */
+    public Location popLocation(UUID uuid) {
+        BackHistory history = locationHistory.get(uuid);
+        Location location = history != null ? history.pop() : null;
+        if (location != null) {
+            plugin.getUserDataManager().markDirty(uuid);
+        }
+        return location;
+    }
+
+    /**
+     * Copy of a player's history, most recent first
+     */
+    public List<Location> getHistory(UUID uuid) {
+        BackHistory history = locationHistory.get(uuid);
+        return history != null ? history.entries() : Collections.emptyList();
+    }
+
+    public void loadHistory(UUID uuid, List<Location> stored) {
+        if (!stored.isEmpty()) {
+            BackHistory history = new BackHistory(plugin.getConfigManager().getBackHistoryDepth());
+            // Oldest first so the most recent ends up on top, extra entries beyond the depth fall off
+            for (int i = stored.size() - 1; i >= 0; i--) {
+                history.push(stored.get(i));
+            }
+            locationHistory.put(uuid, history);
         }
     }
-    
-    public Vector3 getLastLocation(UUID uuid) {
-        LinkedList<Vector3> history = locationHistory.get(uuid);
-        return history != null && !history.isEmpty() ? history.removeFirst() : null;
+
+    public void unloadHistory(UUID uuid) {
+        locationHistory.remove(uuid);
     }
-    
+
     public boolean hasHistory(UUID uuid) {
-        LinkedList<Vector3> history = locationHistory.get(uuid);
+        BackHistory history = locationHistory.get(uuid);
         return history != null && !history.isEmpty();
     }
-}
\ No newline at end of file
+
+    private BackHistory history(UUID uuid) {
+        return locationHistory.computeIfAbsent(uuid, k -> new BackHistory(plugin.getConfigManager().getBackHistoryDepth()));
+    }
+}
@@ -1,52 +1,78 @@
 package com.arkflame.hyessentials.managers;
 
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.arkflame.hyessentials.HyEssentials;
-import com.hypixel.hytale.server.core.entity.entities.Player;
+import com.arkflame.hyessentials.data.PermissionGroup;
+import com.arkflame.hyessentials.data.PlayerSession;
+import com.arkflame.hyessentials.util.ChatTemplate;
+import com.arkflame.hyessentials.util.ColorCodec;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
 
 public class ChatManager {
     private final HyEssentials plugin;
+    private final Map<String, ChatTemplate> templates = new ConcurrentHashMap<>();
+    
+    private final int colorPermission;
+    private final int formatPermission;
     
     public ChatManager(HyEssentials plugin) {
         this.plugin = plugin;
+        this.colorPermission = plugin.getPermissionManager().getPermissionId("essentials.chat.color");
+        this.formatPermission = plugin.getPermissionManager().getPermissionId("essentials.chat.format");
     }
     
-    public String formatChat(Player player, String message) {
+    /**
+     * Format with the session the chat handler already looked up, null for a player without one
+     */
+    public Message formatChat(PlayerRef player, PlayerSession session, String message) {
         UUID uuid = player.getUuid();
+        PermissionManager permissions = plugin.getPermissionManager();
         
-        // Get player's group
-        String groupName = plugin.getPermissionManager().getGroup(uuid);
-        PermissionGroup group = plugin.getPermissionManager().getGroupObject(groupName);
-        
-        String format = plugin.getConfigManager().getChatFormat();
-        
-        if (group != null) {
-            String prefix = group.getPrefix() != null ? group.getPrefix() : "";
-            String suffix = group.getSuffix() != null ? group.getSuffix() : "";
-            
-            format = format.replace("{prefix}", prefix)
-                           .replace("{suffix}", suffix);
+        // Handle color permissions before the message is placed in the format
+        String groupName;
+        if (session != null) {
+            message = ColorCodec.filter(message,
+                permissions.hasPermission(session, colorPermission),
+                permissions.hasPermission(session, formatPermission));
+            groupName = permissions.getGroup(session);
         } else {
-            format = format.replace("{prefix}", "").replace("{suffix}", "");
+            message = ColorCodec.filter(message,
+                permissions.hasPermission(uuid, colorPermission),
+                permissions.hasPermission(uuid, formatPermission));
+            groupName = permissions.getGroup(uuid);
         }
+        return getTemplate(groupName).render(player.getUsername(), message);
+    }
+    
+    private ChatTemplate getTemplate(String groupName) {
+        PermissionGroup group = plugin.getPermissionManager().getGroupObject(groupName);
+        String format = group != null && group.getChatFormat() != null
+            ? group.getChatFormat()
+            : plugin.getConfigManager().getChatFormat();
         
-        format = format.replace("{player}", player.getName())
-                       .replace("{message}", message);
-        
-        // Handle color permissions
-        if (!plugin.getPermissionManager().hasPermission(uuid, "essentials.chat.color")) {
-            message = stripColors(message);
+        // A config reload hands out a new format string, identity is enough to notice it
+        ChatTemplate template = templates.get(groupName);
+        if (template == null || template.getFormat() != format) {
+            String prefix = group != null && group.getPrefix() != null ? group.getPrefix() : "";
+            String suffix = group != null && group.getSuffix() != null ? group.getSuffix() : "";
+            template = ChatTemplate.compile(format, prefix, suffix);
+            templates.put(groupName, template);
         }
-        
-        return colorize(format);
+        return template;
     }
     
-    private String colorize(String text) {
-        return text.replace("&", "§");
+    /**
+     * Drop the compiled template of a group after its prefix, suffix or format changed
+     */
+    public void invalidateTemplate(String groupName) {
+        templates.remove(groupName);
     }
     
-    private String stripColors(String text) {
-        return text.replaceAll("&[0-9a-fk-or]", "");
+    public void invalidateTemplates() {
+        templates.clear();
     }
-}
\ No newline at end of file
+}
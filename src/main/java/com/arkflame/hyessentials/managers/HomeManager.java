@@ -1,60 +1,197 @@
 package com.arkflame.hyessentials.managers;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.arkflame.hyessentials.HyEssentials;
-import com.hypixel.hytale.builtin.hytalegenerator.fields.FastNoiseLite.Vector3;
+import com.arkflame.hyessentials.data.Location;
+import com.arkflame.hyessentials.util.PrefixTrie;
+import com.arkflame.hyessentials.util.SpatialIndex;
 
 public class HomeManager {
+    private static final int INDEX_CELL_SIZE = 64;
+    
     private final HyEssentials plugin;
-    private final Map<UUID, Map<String, Vector3>> homes = new ConcurrentHashMap<>();
+    private final Map<UUID, Map<String, Location>> homes = new ConcurrentHashMap<>();
+    // Home names of players in memory, for completion
+    private final Map<UUID, PrefixTrie> homeNames = new ConcurrentHashMap<>();
+    // Every home of every player, offline ones included, unloading a player keeps theirs
+    private final SpatialIndex<HomeKey> index = new SpatialIndex<>(INDEX_CELL_SIZE);
+    // Players whose homes were loaded or changed while the stored ones were being indexed
+    private final Set<UUID> touched = ConcurrentHashMap.newKeySet();
+    private volatile boolean indexing;
     
     public HomeManager(HyEssentials plugin) {
         this.plugin = plugin;
     }
     
-    public void setHome(UUID uuid, String name, Vector3 location) {
+    /**
+     * Index the homes of every stored player, memory is authoritative for anyone touched meanwhile
+     */
+    public CompletableFuture<Void> indexStoredHomes() {
+        indexing = true;
+        return plugin.getTaskRunner().runIo("homes.index", () -> {
+            try {
+                plugin.getUserDataManager().forEachStored(user -> {
+                    UUID uuid = user.data().getUuid();
+                    // Either this runs first and the change overwrites it, or the player is skipped
+                    synchronized (touched) {
+                        if (!touched.contains(uuid)) {
+                            for (Map.Entry<String, Location> home : user.homes().entrySet()) {
+                                index.put(new HomeKey(uuid, home.getKey()), home.getValue());
+                            }
+                        }
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                indexing = false;
+                touched.clear();
+            }
+        });
+    }
+    
+    public void setHome(UUID uuid, String name, Location location) {
+        touch(uuid);
         homes.computeIfAbsent(uuid, k -> new ConcurrentHashMap<>()).put(name, location);
+        homeNames.computeIfAbsent(uuid, k -> new PrefixTrie()).add(name);
+        index.put(new HomeKey(uuid, name), location);
+        plugin.getUserDataManager().markDirty(uuid);
     }
     
-    public Vector3 getHome(UUID uuid, String name) {
-        Map<String, Vector3> playerHomes = homes.get(uuid);
+    public Location getHome(UUID uuid, String name) {
+        Map<String, Location> playerHomes = homes.get(uuid);
         return playerHomes != null ? playerHomes.get(name) : null;
     }
     
     public void deleteHome(UUID uuid, String name) {
-        Map<String, Vector3> playerHomes = homes.get(uuid);
-        if (playerHomes != null) {
-            playerHomes.remove(name);
+        Map<String, Location> playerHomes = homes.get(uuid);
+        touch(uuid);
+        if (playerHomes != null && playerHomes.remove(name) != null) {
+            index.remove(new HomeKey(uuid, name));
+            PrefixTrie names = homeNames.get(uuid);
+            if (names != null) {
+                names.remove(name);
+            }
+            plugin.getUserDataManager().markDirty(uuid);
         }
     }
     
     public Set<String> getHomes(UUID uuid) {
-        Map<String, Vector3> playerHomes = homes.get(uuid);
+        Map<String, Location> playerHomes = homes.get(uuid);
         return playerHomes != null ? playerHomes.keySet() : Collections.emptySet();
     }
     
     public int getHomeCount(UUID uuid) {
-        Map<String, Vector3> playerHomes = homes.get(uuid);
+        Map<String, Location> playerHomes = homes.get(uuid);
         return playerHomes != null ? playerHomes.size() : 0;
     }
     
+    /**
+     * Copy of a player's homes, for persistence
+     */
+    public Map<String, Location> getHomeMap(UUID uuid) {
+        Map<String, Location> playerHomes = homes.get(uuid);
+        return playerHomes != null ? new HashMap<>(playerHomes) : Collections.emptyMap();
+    }
+    
+    public void loadHomes(UUID uuid, Map<String, Location> stored) {
+        touch(uuid);
+        if (!stored.isEmpty()) {
+            homes.put(uuid, new ConcurrentHashMap<>(stored));
+            PrefixTrie names = new PrefixTrie();
+            stored.keySet().forEach(names::add);
+            homeNames.put(uuid, names);
+            for (Map.Entry<String, Location> home : stored.entrySet()) {
+                index.put(new HomeKey(uuid, home.getKey()), home.getValue());
+            }
+        }
+    }
+    
+    public void unloadHomes(UUID uuid) {
+        // Index entries stay, nearby queries cover offline players too
+        homes.remove(uuid);
+        homeNames.remove(uuid);
+    }
+    
+    /**
+     * Up to limit of a player's homes starting with the prefix, ignoring case, for tab completion
+     */
+    public List<String> completeHomes(UUID uuid, String prefix, int limit) {
+        PrefixTrie names = homeNames.get(uuid);
+        return names != null ? names.complete(prefix, limit, name -> true) : Collections.emptyList();
+    }
+    
+    /**
+     * Up to count homes of any player closest to a location, closest first
+     */
+    public List<SpatialIndex.Match<HomeKey>> getNearestHomes(Location location, int count) {
+        return index.nearest(location, count, key -> true);
+    }
+    
+    /**
+     * Homes of any player within a radius of a location, closest first
+     */
+    public List<SpatialIndex.Match<HomeKey>> getHomesWithin(Location location, double radius) {
+        return index.within(location, radius, key -> true);
+    }
+    
+    /**
+     * A home of another player within the radius, null if there is none, for rules on how close homes may be
+     */
+    public SpatialIndex.Match<HomeKey> findOtherHomeWithin(UUID uuid, Location location, double radius) {
+        return index.anyWithin(location, radius, key -> !key.owner().equals(uuid));
+    }
+    
+    /**
+     * True if a home here would be closer than the configured distance to spawn or another player's home
+     */
+    public boolean isTooCloseToOthers(UUID uuid, Location location) {
+        double minDistance = plugin.getConfigManager().getMinHomeDistance();
+        if (minDistance <= 0) {
+            return false;
+        }
+        Location spawn = plugin.getSpawnManager().getSpawn();
+        if (spawn != null && spawn.distanceSquared(location) < minDistance * minDistance) {
+            return true;
+        }
+        return findOtherHomeWithin(uuid, location, minDistance) != null;
+    }
+    
+    public int getIndexedHomeCount() {
+        return index.size();
+    }
+    
+    private void touch(UUID uuid) {
+        if (indexing) {
+            synchronized (touched) {
+                touched.add(uuid);
+            }
+        }
+    }
+    
     public int getMaxHomes(UUID uuid) {
         // Check permissions for max homes
         if (plugin.getPermissionManager().hasPermission(uuid, "essentials.sethome.unlimited")) {
             return Integer.MAX_VALUE;
         }
         
-        for (int i = 100; i >= 1; i--) {
-            if (plugin.getPermissionManager().hasPermission(uuid, "essentials.sethome." + i)) {
-                return i;
-            }
-        }
-        
-        return plugin.getConfigManager().getDefaultMaxHomes();
+        // Highest "essentials.sethome.<n>" node, wildcards don't carry a number
+        return plugin.getPermissionManager().getIntMeta(uuid, "essentials.sethome",
+            plugin.getConfigManager().getDefaultMaxHomes());
     }
-}
\ No newline at end of file
+    
+    /**
+     * A home in the spatial index, names are as the player typed them
+     */
+    public record HomeKey(UUID owner, String name) {}
+}
@@ -1,27 +1,167 @@
 package com.arkflame.hyessentials.managers;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.arkflame.hyessentials.HyEssentials;
+import com.arkflame.hyessentials.util.AtomicFiles;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
 
 public class IgnoreManager {
+    private static final int FORMAT_VERSION = 1;
+    
+    private final HyEssentials plugin;
+    // Who each player ignores
     private final Map<UUID, Set<UUID>> ignoredPlayers = new ConcurrentHashMap<>();
+    // Who ignores each player, lets chat delivery skip probing every recipient
+    private final Map<UUID, Set<UUID>> ignoredBy = new ConcurrentHashMap<>();
+    private final Path ignoresFile;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    
+    public IgnoreManager(HyEssentials plugin) {
+        this.plugin = plugin;
+        this.ignoresFile = plugin.getDataDirectory().resolve("ignores.dat");
+    }
+    
+    public CompletableFuture<Void> load() {
+        return plugin.getTaskRunner().runIo("ignores.load", () -> {
+            if (Files.notExists(ignoresFile)) {
+                return;
+            }
+            
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(ignoresFile)))) {
+                if (in.readInt() != FORMAT_VERSION) {
+                    throw new IOException("Unknown ignores.dat version");
+                }
+                
+                int owners = in.readInt();
+                for (int i = 0; i < owners; i++) {
+                    UUID uuid = new UUID(in.readLong(), in.readLong());
+                    int count = in.readInt();
+                    for (int j = 0; j < count; j++) {
+                        ignore(uuid, new UUID(in.readLong(), in.readLong()));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+    
+    /**
+     * Rewrite ignores.dat if anything changed, called by the write-behind flusher
+     */
+    public void flush(boolean sync) throws IOException {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            writeFile();
+        } catch (IOException | RuntimeException e) {
+            dirty.set(true);
+            throw e;
+        }
+    }
+    
+    /**
+     * Every ignore edge as raw uuid pairs, the reverse index is rebuilt from them on load
+     */
+    private void writeFile() throws IOException {
+        // Snapshot so the written count always matches the entries
+        Map<UUID, UUID[]> snapshot = new HashMap<>();
+        ignoredPlayers.forEach((uuid, targets) -> {
+            UUID[] copy = targets.toArray(new UUID[0]);
+            if (copy.length > 0) {
+                snapshot.put(uuid, copy);
+            }
+        });
+        
+        AtomicFiles.write(ignoresFile, stream -> {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<UUID, UUID[]> entry : snapshot.entrySet()) {
+                writeUuid(out, entry.getKey());
+                out.writeInt(entry.getValue().length);
+                for (UUID target : entry.getValue()) {
+                    writeUuid(out, target);
+                }
+            }
+            out.flush();
+        });
+    }
     
     public void ignore(UUID uuid, UUID target) {
-        ignoredPlayers.computeIfAbsent(uuid, k -> new HashSet<>()).add(target);
+        link(ignoredPlayers, uuid, target);
+        link(ignoredBy, target, uuid);
+        dirty.set(true);
     }
     
     public void unignore(UUID uuid, UUID target) {
-        Set<UUID> ignored = ignoredPlayers.get(uuid);
-        if (ignored != null) {
+        ignoredPlayers.computeIfPresent(uuid, (k, ignored) -> {
             ignored.remove(target);
-        }
+            return ignored.isEmpty() ? null : ignored;
+        });
+        ignoredBy.computeIfPresent(target, (k, ignorers) -> {
+            ignorers.remove(uuid);
+            return ignorers.isEmpty() ? null : ignorers;
+        });
+        dirty.set(true);
     }
     
     public boolean isIgnoring(UUID uuid, UUID target) {
         Set<UUID> ignored = ignoredPlayers.get(uuid);
         return ignored != null && ignored.contains(target);
     }
-}
\ No newline at end of file
+    
+    /**
+     * Remove everyone ignoring the sender from a recipient list
+     * Work follows the sender's ignorers, the list is only walked when one of them is online
+     */
+    public void filterRecipients(UUID sender, List<PlayerRef> recipients) {
+        Set<UUID> ignorers = ignoredBy.get(sender);
+        if (ignorers == null || ignorers.isEmpty()) {
+            return;
+        }
+        
+        Set<UUID> online = new HashSet<>();
+        for (UUID ignorer : ignorers) {
+            if (plugin.getSessionManager().getSession(ignorer) != null) {
+                online.add(ignorer);
+            }
+        }
+        if (!online.isEmpty()) {
+            recipients.removeIf(recipient -> online.contains(recipient.getUuid()));
+        }
+    }
+    
+    private static void link(Map<UUID, Set<UUID>> index, UUID key, UUID value) {
+        // compute keeps the add atomic with the empty-set removal in unignore
+        index.compute(key, (k, values) -> {
+            if (values == null) {
+                values = ConcurrentHashMap.newKeySet();
+            }
+            values.add(value);
+            return values;
+        });
+    }
+    
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+}
@@ -1,44 +1,88 @@
 package com.arkflame.hyessentials.managers;
 
-import java.io.File;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.arkflame.hyessentials.HyEssentials;
+import com.arkflame.hyessentials.data.Kit;
+import com.arkflame.hyessentials.data.PlayerSession;
+import com.arkflame.hyessentials.storage.Records;
+import com.arkflame.hyessentials.tasks.ExpiringMap;
+import com.arkflame.hyessentials.util.PrefixTrie;
 import com.hypixel.hytale.server.core.inventory.ItemStack;
 
 public class KitManager {
+    private static final String COLLECTION = "kits";
+    
     private final HyEssentials plugin;
     private final Map<String, Kit> kits = new ConcurrentHashMap<>();
-    private final Map<UUID, Map<String, Long>> kitCooldowns = new ConcurrentHashMap<>();
-    private final File kitsFile;
+    private final Map<String, Integer> kitPermissions = new ConcurrentHashMap<>();
+    private final Map<UUID, ExpiringMap<String, Long>> kitCooldowns = new ConcurrentHashMap<>();
+    private final PrefixTrie names = new PrefixTrie();
+    // Bumped whenever a kit is added or removed, so cached access sets are recomputed
+    private final AtomicInteger generation = new AtomicInteger();
+    // Keys changed since the last flush, written one by one so a failed load never wipes the rest
+    private final Set<String> dirtyKeys = ConcurrentHashMap.newKeySet();
     
     public KitManager(HyEssentials plugin) {
         this.plugin = plugin;
-        try {
-        	// Just to be safe
-        	Path load = plugin.getDataDirectory().resolve("kits.yml");
-        	if (Files.notExists(load)) { Files.createFile(load); }
-            this.kitsFile = load.toFile();
-        } catch (IOException e) { e.printStackTrace(); }
     }
     
-    public void load() {
-        plugin.getTaskRunner().runAsync(() -> {
-            if (kitsFile.exists()) {
-                // Load kits from file
+    public CompletableFuture<Void> load() {
+        return plugin.getTaskRunner().runIo("kits.load", () -> {
+            try {
+                for (Map.Entry<String, byte[]> record : plugin.getStorage().loadAll(COLLECTION).entrySet()) {
+                    // Changed since an unload whose flush failed, newer than what is stored
+                    if (dirtyKeys.contains(record.getKey())) {
+                        continue;
+                    }
+                    Kit kit = decodeKit(record.getValue());
+                    kits.put(record.getKey(), kit);
+                    kitPermissions.put(record.getKey(), plugin.getPermissionManager().getPermissionId("essentials.kits." + record.getKey()));
+                    names.add(kit.getName());
+                }
+                generation.incrementAndGet();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         });
     }
     
+    /**
+     * Drop kit definitions from memory once the kits module is unloaded, cooldowns stay with their players
+     */
+    public void unload() {
+        for (Kit kit : kits.values()) {
+            names.remove(kit.getName());
+        }
+        kits.clear();
+        kitPermissions.clear();
+        generation.incrementAndGet();
+    }
+    
     public void createKit(String name, List<ItemStack> items, long cooldown, double price) {
-        kits.put(name.toLowerCase(), new Kit(name, items, cooldown, price));
+        String key = name.toLowerCase();
+        Kit previous = kits.put(key, new Kit(name, items, cooldown, price));
+        kitPermissions.put(key, plugin.getPermissionManager().getPermissionId("essentials.kits." + key));
+        if (previous != null) {
+            names.remove(previous.getName());
+        }
+        names.add(name);
+        generation.incrementAndGet();
+        dirtyKeys.add(key);
     }
     
     public Kit getKit(String name) {
@@ -46,28 +90,161 @@ public class KitManager {
     }
     
     public void deleteKit(String name) {
-        kits.remove(name.toLowerCase());
+        String key = name.toLowerCase();
+        Kit previous = kits.remove(key);
+        kitPermissions.remove(key);
+        if (previous != null) {
+            names.remove(previous.getName());
+            generation.incrementAndGet();
+        }
+        dirtyKeys.add(key);
+    }
+    
+    /**
+     * Write kit definitions if they changed, called by the write-behind flusher
+     */
+    public void flush(boolean sync) throws IOException {
+        if (dirtyKeys.isEmpty()) {
+            return;
+        }
+        
+        List<String> taken = new ArrayList<>();
+        try {
+            Map<String, byte[]> changes = new HashMap<>();
+            for (Iterator<String> iterator = dirtyKeys.iterator(); iterator.hasNext();) {
+                String key = iterator.next();
+                iterator.remove();
+                taken.add(key);
+                Kit kit = kits.get(key);
+                changes.put(key, kit != null ? encodeKit(kit) : null);
+            }
+            plugin.getStorage().write(COLLECTION, changes);
+        } catch (IOException | RuntimeException e) {
+            dirtyKeys.addAll(taken);
+            throw e;
+        }
+    }
+    
+    private static byte[] encodeKit(Kit kit) throws IOException {
+        return Records.encode(out -> {
+            out.writeUTF(kit.getName());
+            out.writeLong(kit.getCooldown());
+            out.writeDouble(kit.getPrice());
+            out.writeInt(kit.getItems().size());
+            for (ItemStack item : kit.getItems()) {
+                out.writeUTF(item.getItemId());
+                out.writeInt(item.getQuantity());
+            }
+        });
+    }
+    
+    private static Kit decodeKit(byte[] record) throws IOException {
+        DataInputStream in = Records.reader(record);
+        String name = in.readUTF();
+        long cooldown = in.readLong();
+        double price = in.readDouble();
+        int count = in.readInt();
+        List<ItemStack> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new ItemStack(in.readUTF(), in.readInt()));
+        }
+        return new Kit(name, items, cooldown, price);
     }
     
     public Set<String> getKitNames() {
         return kits.keySet();
     }
     
+    /**
+     * Up to limit kits a player may use starting with the prefix, for tab completion
+     */
+    public List<String> completeKits(UUID uuid, String prefix, int limit) {
+        PlayerSession session = plugin.getSessionManager().getSession(uuid);
+        if (session == null) {
+            return names.complete(prefix, limit, name -> canUseKit(uuid, name));
+        }
+        Set<String> accessible = getAccessibleKits(session);
+        return names.complete(prefix, limit, name -> accessible.contains(name.toLowerCase()));
+    }
+    
+    /**
+     * Keys of the kits an online player may use, checked once per permission or kit change
+     */
+    public Set<String> getAccessibleKits(PlayerSession session) {
+        // Both read before checking, a change meanwhile makes the stored set stale right away
+        int version = session.getPermissionsVersion();
+        int current = generation.get();
+        Set<String> accessible = session.getKitAccess().get(version, current);
+        if (accessible != null) {
+            return accessible;
+        }
+        
+        accessible = new HashSet<>();
+        for (Map.Entry<String, Integer> entry : kitPermissions.entrySet()) {
+            if (plugin.getPermissionManager().hasPermission(session, entry.getValue())) {
+                accessible.add(entry.getKey());
+            }
+        }
+        session.getKitAccess().put(version, current, accessible);
+        return accessible;
+    }
+    
     public boolean canUseKit(UUID uuid, String kitName) {
-        return plugin.getPermissionManager().hasPermission(uuid, "essentials.kits." + kitName) ||
-               plugin.getPermissionManager().hasPermission(uuid, "essentials.kits.*");
+        // "essentials.kits.*" is resolved by the permission trie itself
+        String key = kitName.toLowerCase();
+        Integer permissionId = kitPermissions.get(key);
+        if (permissionId != null) {
+            return plugin.getPermissionManager().hasPermission(uuid, permissionId);
+        }
+        return plugin.getPermissionManager().hasPermission(uuid, "essentials.kits." + key);
     }
     
     public boolean isOnCooldown(UUID uuid, String kitName) {
-        Map<String, Long> cooldowns = kitCooldowns.get(uuid);
-        if (cooldowns == null) return false;
-        
-        Long cooldownEnd = cooldowns.get(kitName);
-        return cooldownEnd != null && System.currentTimeMillis() < cooldownEnd;
+        ExpiringMap<String, Long> cooldowns = kitCooldowns.get(uuid);
+        return cooldowns != null && cooldowns.containsKey(kitName);
+    }
+    
+    public long getCooldownRemaining(UUID uuid, String kitName) {
+        ExpiringMap<String, Long> cooldowns = kitCooldowns.get(uuid);
+        return cooldowns != null ? cooldowns.getRemaining(kitName) : 0;
     }
     
     public void setCooldown(UUID uuid, String kitName, long cooldown) {
-        kitCooldowns.computeIfAbsent(uuid, k -> new ConcurrentHashMap<>())
-            .put(kitName, System.currentTimeMillis() + cooldown);
+        kitCooldowns.compute(uuid, (k, cooldowns) -> {
+            if (cooldowns == null) {
+                cooldowns = new ExpiringMap<>(plugin.getExpiryService(), (kit, end) -> releaseIfEmpty(uuid));
+            }
+            cooldowns.put(kitName, System.currentTimeMillis() + cooldown, cooldown);
+            return cooldowns;
+        });
+        plugin.getUserDataManager().markDirty(uuid);
+    }
+    
+    /**
+     * Active cooldowns as absolute end times, for persistence
+     */
+    public Map<String, Long> getCooldowns(UUID uuid) {
+        ExpiringMap<String, Long> cooldowns = kitCooldowns.get(uuid);
+        return cooldowns != null ? cooldowns.getDeadlines() : Collections.emptyMap();
+    }
+    
+    /**
+     * Restore persisted cooldowns, ones that ran out while offline are dropped
+     */
+    public void loadCooldowns(UUID uuid, Map<String, Long> endTimes) {
+        long now = System.currentTimeMillis();
+        endTimes.forEach((kitName, end) -> {
+            if (end > now) {
+                setCooldown(uuid, kitName, end - now);
+            }
+        });
+    }
+    
+    public void unloadCooldowns(UUID uuid) {
+        kitCooldowns.remove(uuid);
+    }
+    
+    private void releaseIfEmpty(UUID uuid) {
+        kitCooldowns.computeIfPresent(uuid, (k, cooldowns) -> cooldowns.isEmpty() ? null : cooldowns);
     }
 }
\ No newline at end of file
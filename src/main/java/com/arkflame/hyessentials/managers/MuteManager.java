@@ -1,33 +1,56 @@
 package com.arkflame.hyessentials.managers;
 
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+
+import com.arkflame.hyessentials.HyEssentials;
+import com.arkflame.hyessentials.data.PlayerSession;
+import com.arkflame.hyessentials.tasks.ExpiringMap;
+import com.arkflame.hyessentials.util.ColorCodec;
 
 public class MuteManager {
-    private final Map<UUID, Long> mutedPlayers = new ConcurrentHashMap<>();
+    private final HyEssentials plugin;
+    private final ExpiringMap<UUID, Boolean> mutedPlayers;
+    
+    public MuteManager(HyEssentials plugin) {
+        this.plugin = plugin;
+        this.mutedPlayers = new ExpiringMap<>(plugin.getExpiryService(), (uuid, muted) -> notifyExpired(uuid));
+    }
     
     public void mute(UUID uuid, long duration) {
-        if (duration > 0) {
-            mutedPlayers.put(uuid, System.currentTimeMillis() + duration);
-        } else {
-            mutedPlayers.put(uuid, Long.MAX_VALUE);
+        // Permanent mutes (duration <= 0) never enter the wheel
+        mutedPlayers.put(uuid, Boolean.TRUE, duration);
+        PlayerSession session = plugin.getSessionManager().getSession(uuid);
+        if (session != null) {
+            session.setMuted(true);
         }
     }
     
     public void unmute(UUID uuid) {
         mutedPlayers.remove(uuid);
+        PlayerSession session = plugin.getSessionManager().getSession(uuid);
+        if (session != null) {
+            session.setMuted(mutedPlayers.containsKey(uuid));
+        }
     }
     
     public boolean isMuted(UUID uuid) {
-        Long muteEnd = mutedPlayers.get(uuid);
-        if (muteEnd == null) return false;
-        
-        if (muteEnd != Long.MAX_VALUE && System.currentTimeMillis() > muteEnd) {
-            mutedPlayers.remove(uuid);
-            return false;
+        return mutedPlayers.containsKey(uuid);
+    }
+    
+    /**
+     * Mute check for an online player, reads the flag mirrored on their session
+     */
+    public boolean isMuted(PlayerSession session) {
+        return session.isMuted();
+    }
+    
+    private void notifyExpired(UUID uuid) {
+        PlayerSession session = plugin.getSessionManager().getSession(uuid);
+        if (session != null) {
+            // A new mute may have replaced the expired one
+            session.setMuted(mutedPlayers.containsKey(uuid));
+            session.getPlayerRef().sendMessage(ColorCodec.parseCached(
+                plugin.getLanguageManager().getMessage(session.getLocale(), "mute_expired")));
         }
-        
-        return true;
     }
-}
\ No newline at end of file
+}
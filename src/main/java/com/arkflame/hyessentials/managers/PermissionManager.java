@@ -0,0 +1,657 @@
+package com.arkflame.hyessentials.managers;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.arkflame.hyessentials.HyEssentials;
+import com.arkflame.hyessentials.data.PermissionGroup;
+import com.arkflame.hyessentials.data.PlayerSession;
+import com.arkflame.hyessentials.permissions.PermissionMeta;
+import com.arkflame.hyessentials.permissions.PermissionRegistry;
+import com.arkflame.hyessentials.permissions.PermissionSet;
+import com.arkflame.hyessentials.permissions.PermissionTrie;
+import com.arkflame.hyessentials.permissions.ResolvedPermissions;
+import com.arkflame.hyessentials.storage.Records;
+
+public class PermissionManager {
+    private static final String GROUPS = "groups";
+    private static final String PLAYERS = "permission_players";
+    private static final int OFFLINE_CACHE_SIZE = 256;
+    
+    private final HyEssentials plugin;
+    private final Map<String, PermissionGroup> groups = new ConcurrentHashMap<>();
+    private final Map<String, PermissionSet> flattenedGroups = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> groupChildren = new ConcurrentHashMap<>();
+    private final Object hierarchyLock = new Object();
+    private final PermissionRegistry registry = PermissionRegistry.get();
+    private final Map<UUID, PermissionSet> playerPermissions = new ConcurrentHashMap<>();
+    private final Map<UUID, String> playerGroups = new ConcurrentHashMap<>();
+    private final AtomicBoolean groupsDirty = new AtomicBoolean();
+    private final Set<UUID> dirtyPlayers = ConcurrentHashMap.newKeySet();
+    // Players without an open session, least recently checked fall out
+    private final Map<UUID, ResolvedPermissions> offlineResolved = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, ResolvedPermissions> eldest) {
+            return size() > OFFLINE_CACHE_SIZE;
+        }
+    };
+    // Bumped under the offlineResolved lock by every invalidation
+    private long offlineGeneration;
+    
+    public PermissionManager(HyEssentials plugin) {
+    	this.plugin = plugin;
+    }
+    
+    public CompletableFuture<Void> load() {
+        return plugin.getTaskRunner().runIo("permissions.load", () -> {
+            try {
+                Map<String, byte[]> storedGroups = plugin.getStorage().loadAll(GROUPS);
+                if (storedGroups.isEmpty()) {
+                    createDefaultGroups();
+                    groupsDirty.set(true);
+                }
+                for (byte[] record : storedGroups.values()) {
+                    PermissionGroup group = decodeGroup(record);
+                    groups.put(group.getName(), group);
+                }
+                
+                for (Map.Entry<String, byte[]> record : plugin.getStorage().loadAll(PLAYERS).entrySet()) {
+                    decodePlayer(UUID.fromString(record.getKey()), record.getValue());
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                // Run with defaults, the flusher leaves what is stored alone after a failed load
+                if (groups.isEmpty()) {
+                    createDefaultGroups();
+                }
+                throw new IllegalStateException("Could not read stored permissions", e);
+            } finally {
+                flattenAll();
+                plugin.getChatManager().invalidateTemplates();
+            }
+        });
+    }
+    
+    /**
+     * Write changed groups and players, called by the write-behind flusher
+     */
+    public void flush(boolean sync) throws IOException {
+        if (groupsDirty.getAndSet(false)) {
+            try {
+                Map<String, byte[]> records = new HashMap<>();
+                for (PermissionGroup group : groups.values()) {
+                    records.put(group.getName(), encodeGroup(group));
+                }
+                plugin.getStorage().replaceAll(GROUPS, records);
+            } catch (IOException | RuntimeException e) {
+                groupsDirty.set(true);
+                throw e;
+            }
+        }
+        
+        if (!dirtyPlayers.isEmpty()) {
+            List<UUID> taken = new ArrayList<>();
+            try {
+                Map<String, byte[]> changes = new HashMap<>();
+                for (Iterator<UUID> iterator = dirtyPlayers.iterator(); iterator.hasNext();) {
+                    UUID uuid = iterator.next();
+                    iterator.remove();
+                    taken.add(uuid);
+                    changes.put(uuid.toString(), encodePlayer(uuid));
+                }
+                plugin.getStorage().write(PLAYERS, changes);
+            } catch (IOException | RuntimeException e) {
+                dirtyPlayers.addAll(taken);
+                throw e;
+            }
+        }
+    }
+    
+    private static byte[] encodeGroup(PermissionGroup group) throws IOException {
+        return Records.encode(out -> {
+            out.writeUTF(group.getName());
+            out.writeInt(group.getPriority());
+            List<String> parents = group.getParents();
+            out.writeInt(parents.size());
+            for (String parent : parents) {
+                out.writeUTF(parent);
+            }
+            Collection<String> permissions = group.getPermissions();
+            out.writeInt(permissions.size());
+            for (String permission : permissions) {
+                out.writeUTF(permission);
+            }
+            Records.writeNullableUTF(out, group.getPrefix());
+            Records.writeNullableUTF(out, group.getSuffix());
+            Records.writeNullableUTF(out, group.getChatFormat());
+        });
+    }
+    
+    private static PermissionGroup decodeGroup(byte[] record) throws IOException {
+        DataInputStream in = Records.reader(record);
+        PermissionGroup group = new PermissionGroup(in.readUTF(), in.readInt());
+        int parentCount = in.readInt();
+        for (int i = 0; i < parentCount; i++) {
+            group.getParents().add(in.readUTF());
+        }
+        int permissionCount = in.readInt();
+        for (int i = 0; i < permissionCount; i++) {
+            group.addPermission(in.readUTF());
+        }
+        group.setPrefix(Records.readNullableUTF(in));
+        group.setSuffix(Records.readNullableUTF(in));
+        group.setChatFormat(Records.readNullableUTF(in));
+        return group;
+    }
+    
+    /**
+     * A player's group and own nodes, null when there is nothing to keep
+     */
+    private byte[] encodePlayer(UUID uuid) throws IOException {
+        String group = playerGroups.get(uuid);
+        PermissionSet permissions = playerPermissions.get(uuid);
+        Collection<String> nodes = permissions != null ? permissions.toNames() : Collections.emptyList();
+        if (group == null && nodes.isEmpty()) {
+            return null;
+        }
+        return Records.encode(out -> {
+            Records.writeNullableUTF(out, group);
+            out.writeInt(nodes.size());
+            for (String node : nodes) {
+                out.writeUTF(node);
+            }
+        });
+    }
+    
+    private void decodePlayer(UUID uuid, byte[] record) throws IOException {
+        DataInputStream in = Records.reader(record);
+        String group = Records.readNullableUTF(in);
+        if (group != null) {
+            playerGroups.put(uuid, group);
+        }
+        int count = in.readInt();
+        if (count > 0) {
+            PermissionSet permissions = new PermissionSet();
+            for (int i = 0; i < count; i++) {
+                permissions.add(in.readUTF());
+            }
+            playerPermissions.put(uuid, permissions);
+        }
+    }
+    
+    private void createDefaultGroups() {
+        PermissionGroup defaultGroup = new PermissionGroup("default", 0);
+        defaultGroup.addPermission("essentials.help");
+        groups.put("default", defaultGroup);
+        
+        PermissionGroup vip = new PermissionGroup("vip", 10);
+        vip.getParents().add("default");
+        vip.addPermission("essentials.fly");
+        vip.setPrefix("&6[VIP]&r ");
+        groups.put("vip", vip);
+        
+        PermissionGroup admin = new PermissionGroup("admin", 100);
+        admin.getParents().add("vip");
+        admin.addPermission("essentials.*");
+        admin.setPrefix("&c[Admin]&r ");
+        groups.put("admin", admin);
+    }
+    
+    /**
+     * Check a node by name, names built from player input are not interned
+     * so typos never grow the registry every resolve walks
+     */
+    public boolean hasPermission(UUID uuid, String permission) {
+        return resolved(uuid).has(permission);
+    }
+    
+    /**
+     * Check a node pre-resolved through {@link #getPermissionId(String)}
+     */
+    public boolean hasPermission(UUID uuid, int permissionId) {
+        return resolved(uuid).has(permissionId);
+    }
+    
+    /**
+     * Check a node for an online player without looking them up again
+     */
+    public boolean hasPermission(PlayerSession session, int permissionId) {
+        return resolved(session).has(permissionId);
+    }
+    
+    /**
+     * Intern a node so hot callers can check it without hashing the string again
+     */
+    public int getPermissionId(String permission) {
+        return registry.intern(permission);
+    }
+    
+    /**
+     * Get the highest numeric suffix granted for a node, built once per resolve
+     * so limits like "essentials.sethome.N" are a single lookup
+     */
+    public int getIntMeta(UUID uuid, String key, int defaultValue) {
+        return resolved(uuid).getIntMeta(key, defaultValue);
+    }
+    
+    /**
+     * Online players keep their resolved permissions on the session,
+     * everyone else in a small cache shared by all offline checks
+     */
+    private ResolvedPermissions resolved(UUID uuid) {
+        PlayerSession session = plugin.getSessionManager().getSession(uuid);
+        return session != null ? resolved(session) : resolvedOffline(uuid);
+    }
+    
+    private ResolvedPermissions resolvedOffline(UUID uuid) {
+        long generation;
+        synchronized (offlineResolved) {
+            ResolvedPermissions cached = offlineResolved.get(uuid);
+            if (cached != null) {
+                return cached;
+            }
+            generation = offlineGeneration;
+        }
+        
+        ResolvedPermissions permissions = resolve(uuid);
+        synchronized (offlineResolved) {
+            // Something changed while resolving, use the result once but don't keep it
+            if (generation == offlineGeneration) {
+                offlineResolved.put(uuid, permissions);
+            }
+        }
+        return permissions;
+    }
+    
+    private ResolvedPermissions resolved(PlayerSession session) {
+        ResolvedPermissions permissions = session.getPermissions();
+        if (permissions == null) {
+            int version = session.getPermissionsVersion();
+            permissions = resolve(session.getUuid());
+            session.setPermissions(permissions, getGroup(session.getUuid()), version);
+        }
+        return permissions;
+    }
+    
+    private ResolvedPermissions resolve(UUID uuid) {
+        PermissionTrie trie = new PermissionTrie();
+        PermissionMeta meta = new PermissionMeta();
+        
+        // Group permissions, already flattened with every inherited group
+        String groupName = playerGroups.get(uuid);
+        if (groupName != null) {
+            PermissionSet groupPerms = flattenedGroups.get(groupName);
+            if (groupPerms != null) {
+                groupPerms.forEach(id -> {
+                    String node = registry.nameOf(id);
+                    trie.add(node);
+                    meta.accept(node);
+                });
+            }
+        }
+        
+        // Player-specific permissions
+        PermissionSet perms = playerPermissions.get(uuid);
+        if (perms != null) {
+            perms.forEach(id -> {
+                String node = registry.nameOf(id);
+                trie.add(node);
+                meta.accept(node);
+            });
+        }
+        
+        return new ResolvedPermissions(trie, meta);
+    }
+    
+    public void addPermission(UUID uuid, String permission) {
+        playerPermissions.computeIfAbsent(uuid, k -> new PermissionSet()).add(permission);
+        dirtyPlayers.add(uuid);
+        invalidate(uuid);
+    }
+    
+    public void removePermission(UUID uuid, String permission) {
+        PermissionSet perms = playerPermissions.get(uuid);
+        if (perms != null) {
+            perms.remove(permission);
+            dirtyPlayers.add(uuid);
+        }
+        invalidate(uuid);
+    }
+    
+    public void setGroup(UUID uuid, String groupName) {
+        if (groups.containsKey(groupName)) {
+            playerGroups.put(uuid, groupName);
+            dirtyPlayers.add(uuid);
+            invalidate(uuid);
+        }
+    }
+    
+    /**
+     * Drop the resolved permissions of a player, they are rebuilt on the next check
+     */
+    public void invalidate(UUID uuid) {
+        synchronized (offlineResolved) {
+            offlineGeneration++;
+            offlineResolved.remove(uuid);
+        }
+        PlayerSession session = plugin.getSessionManager().getSession(uuid);
+        if (session != null) {
+            session.invalidatePermissions();
+        }
+    }
+    
+    /**
+     * Drop every resolved permission set, used after group permissions change
+     */
+    public void invalidateAll() {
+        invalidateOffline();
+        plugin.getSessionManager().forEach(PlayerSession::invalidatePermissions);
+    }
+    
+    private void invalidateOffline() {
+        synchronized (offlineResolved) {
+            offlineGeneration++;
+            offlineResolved.clear();
+        }
+    }
+    
+    public String getGroup(UUID uuid) {
+        return playerGroups.getOrDefault(uuid, "default");
+    }
+    
+    /**
+     * Group of an online player, cached with their resolved permissions
+     */
+    public String getGroup(PlayerSession session) {
+        String group = session.getGroup();
+        if (group == null) {
+            resolved(session);
+            group = session.getGroup();
+        }
+        return group != null ? group : getGroup(session.getUuid());
+    }
+    
+    public PermissionGroup getGroupObject(String name) {
+        return groups.get(name);
+    }
+    
+    public void createGroup(String name, int priority) {
+        createGroup(name, priority, Collections.emptyList());
+    }
+    
+    public void createGroup(String name, int priority, List<String> parents) {
+        synchronized (hierarchyLock) {
+            PermissionGroup group = new PermissionGroup(name, priority);
+            groups.put(name, group);
+            groupsDirty.set(true);
+            plugin.getChatManager().invalidateTemplate(name);
+            if (!setGroupParents(name, parents)) {
+                // Still link and flatten the group itself without parents
+                setGroupParents(name, Collections.emptyList());
+            }
+        }
+    }
+    
+    public void deleteGroup(String name) {
+        synchronized (hierarchyLock) {
+            PermissionGroup group = groups.remove(name);
+            if (group != null) {
+                groupsDirty.set(true);
+                for (String parent : group.getParents()) {
+                    unlinkChild(parent, name);
+                }
+            }
+            // Children keep the name so a recreated group is linked again
+            refreshGroup(name);
+            plugin.getChatManager().invalidateTemplate(name);
+        }
+    }
+    
+    /**
+     * Replace the parents of a group, rejected if it would create a cycle
+     */
+    public boolean setGroupParents(String name, List<String> parents) {
+        synchronized (hierarchyLock) {
+            PermissionGroup group = groups.get(name);
+            if (group == null) {
+                return false;
+            }
+            
+            for (String parent : parents) {
+                if (parent.equals(name) || isAncestor(name, parent)) {
+                    plugin.getLogger().atWarning().log("Group " + name + " can't inherit " + parent + ": inheritance cycle");
+                    return false;
+                }
+            }
+            
+            for (String parent : group.getParents()) {
+                unlinkChild(parent, name);
+            }
+            group.setParents(parents);
+            for (String parent : parents) {
+                groupChildren.computeIfAbsent(parent, k -> ConcurrentHashMap.newKeySet()).add(name);
+            }
+            
+            groupsDirty.set(true);
+            refreshGroup(name);
+            return true;
+        }
+    }
+    
+    public boolean addGroupParent(String name, String parent) {
+        PermissionGroup group = groups.get(name);
+        if (group == null || group.getParents().contains(parent)) {
+            return false;
+        }
+        List<String> parents = new ArrayList<>(group.getParents());
+        parents.add(parent);
+        return setGroupParents(name, parents);
+    }
+    
+    public boolean removeGroupParent(String name, String parent) {
+        PermissionGroup group = groups.get(name);
+        if (group == null || !group.getParents().contains(parent)) {
+            return false;
+        }
+        List<String> parents = new ArrayList<>(group.getParents());
+        parents.remove(parent);
+        return setGroupParents(name, parents);
+    }
+    
+    public void setGroupPrefix(String name, String prefix) {
+        PermissionGroup group = groups.get(name);
+        if (group != null) {
+            group.setPrefix(prefix);
+            groupsDirty.set(true);
+            plugin.getChatManager().invalidateTemplate(name);
+        }
+    }
+    
+    public void setGroupSuffix(String name, String suffix) {
+        PermissionGroup group = groups.get(name);
+        if (group != null) {
+            group.setSuffix(suffix);
+            groupsDirty.set(true);
+            plugin.getChatManager().invalidateTemplate(name);
+        }
+    }
+    
+    public void setGroupChatFormat(String name, String chatFormat) {
+        PermissionGroup group = groups.get(name);
+        if (group != null) {
+            group.setChatFormat(chatFormat);
+            groupsDirty.set(true);
+            plugin.getChatManager().invalidateTemplate(name);
+        }
+    }
+    
+    public void addGroupPermission(String name, String permission) {
+        PermissionGroup group = groups.get(name);
+        if (group != null) {
+            group.addPermission(permission);
+            groupsDirty.set(true);
+            refreshGroup(name);
+        }
+    }
+    
+    public void removeGroupPermission(String name, String permission) {
+        PermissionGroup group = groups.get(name);
+        if (group != null) {
+            group.removePermission(permission);
+            groupsDirty.set(true);
+            refreshGroup(name);
+        }
+    }
+    
+    /**
+     * Get the permissions of a group including every inherited node
+     */
+    public Collection<String> getEffectiveGroupPermissions(String name) {
+        PermissionSet flattened = flattenedGroups.get(name);
+        return flattened != null ? flattened.toNames() : Collections.emptyList();
+    }
+    
+    /**
+     * Rebuild the whole inheritance graph, used after loading groups
+     */
+    private void flattenAll() {
+        synchronized (hierarchyLock) {
+            groupChildren.clear();
+            for (PermissionGroup group : groups.values()) {
+                for (String parent : group.getParents()) {
+                    groupChildren.computeIfAbsent(parent, k -> ConcurrentHashMap.newKeySet()).add(group.getName());
+                }
+            }
+            
+            Map<String, PermissionSet> computed = new HashMap<>();
+            for (String name : groups.keySet()) {
+                flatten(name, computed, new HashSet<>(), groups.keySet());
+            }
+            flattenedGroups.keySet().retainAll(groups.keySet());
+            flattenedGroups.putAll(computed);
+            invalidateAll();
+        }
+    }
+    
+    /**
+     * Recompute a group and all of its descendants, other groups keep their flattened sets
+     */
+    private void refreshGroup(String name) {
+        synchronized (hierarchyLock) {
+            Set<String> affected = collectDescendants(name);
+            
+            Map<String, PermissionSet> computed = new HashMap<>();
+            for (String group : affected) {
+                if (groups.containsKey(group)) {
+                    flatten(group, computed, new HashSet<>(), affected);
+                } else {
+                    flattenedGroups.remove(group);
+                }
+            }
+            flattenedGroups.putAll(computed);
+            
+            // Offline players aren't tracked by group, so their cache is dropped as a whole
+            invalidateOffline();
+            plugin.getSessionManager().forEach(session -> {
+                if (affected.contains(getGroup(session.getUuid()))) {
+                    session.invalidatePermissions();
+                }
+            });
+        }
+    }
+    
+    /**
+     * Flatten a group, only groups in the dirty set are recomputed and
+     * a group found again on the current path is reported as a cycle
+     */
+    private PermissionSet flatten(String name, Map<String, PermissionSet> computed, Set<String> path, Set<String> dirty) {
+        PermissionSet done = computed.get(name);
+        if (done != null) {
+            return done;
+        }
+        if (!dirty.contains(name)) {
+            return flattenedGroups.get(name);
+        }
+        
+        PermissionGroup group = groups.get(name);
+        if (group == null) {
+            return null;
+        }
+        
+        path.add(name);
+        PermissionSet flattened = new PermissionSet();
+        flattened.addAll(group.getPermissionSet());
+        for (String parent : group.getParents()) {
+            if (path.contains(parent)) {
+                plugin.getLogger().atWarning().log("Ignoring inheritance cycle between groups " + name + " and " + parent);
+                continue;
+            }
+            PermissionSet inherited = flatten(parent, computed, path, dirty);
+            if (inherited != null) {
+                flattened.addAll(inherited);
+            }
+        }
+        path.remove(name);
+        
+        computed.put(name, flattened);
+        return flattened;
+    }
+    
+    private Set<String> collectDescendants(String name) {
+        Set<String> result = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(name);
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            if (result.add(current)) {
+                queue.addAll(groupChildren.getOrDefault(current, Collections.emptySet()));
+            }
+        }
+        return result;
+    }
+    
+    private boolean isAncestor(String ancestor, String name) {
+        Set<String> visited = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(name);
+        while (!queue.isEmpty()) {
+            PermissionGroup group = groups.get(queue.poll());
+            if (group == null || !visited.add(group.getName())) {
+                continue;
+            }
+            for (String parent : group.getParents()) {
+                if (parent.equals(ancestor)) {
+                    return true;
+                }
+                queue.add(parent);
+            }
+        }
+        return false;
+    }
+    
+    private void unlinkChild(String parent, String child) {
+        Set<String> children = groupChildren.get(parent);
+        if (children != null) {
+            children.remove(child);
+        }
+    }
+    
+    public Collection<PermissionGroup> getAllGroups() {
+        return groups.values();
+    }
+}
\ No newline at end of file
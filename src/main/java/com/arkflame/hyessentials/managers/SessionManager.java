@@ -0,0 +1,146 @@
+package com.arkflame.hyessentials.managers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.arkflame.hyessentials.HyEssentials;
+import com.arkflame.hyessentials.data.PlayerSession;
+import com.hypixel.hytale.server.core.universe.PlayerRef;
+
+/**
+ * SessionManager - Online players, each holding a dense slot from join until quit
+ * Slots index a compact array so all online sessions can be walked without hashing,
+ * freed slots are handed to the next player that joins.
+ */
+public class SessionManager {
+    private static final int INITIAL_SLOTS = 64;
+    
+    private final HyEssentials plugin;
+    private final Map<UUID, PlayerSession> sessions = new ConcurrentHashMap<>();
+    // Written under this, read without locking
+    private volatile PlayerSession[] slots = new PlayerSession[INITIAL_SLOTS];
+    private int[] freeSlots = new int[INITIAL_SLOTS];
+    private int freeCount;
+    private volatile int highestSlot;
+    private final Map<String, Set<PlayerRef>> localeBuckets = new ConcurrentHashMap<>();
+    
+    public SessionManager(HyEssentials plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Open a session, the player's locale is resolved here and never again
+     */
+    public PlayerSession open(PlayerRef player) {
+        String resolvedLocale = resolveLocale(player);
+        PlayerSession session;
+        synchronized (this) {
+            PlayerSession previous = sessions.get(player.getUuid());
+            if (previous != null) {
+                release(previous);
+            }
+            session = new PlayerSession(player, resolvedLocale, allocateSlot());
+            slots[session.getSlot()] = session;
+            sessions.put(player.getUuid(), session);
+        }
+        // Seeded after the session is visible so a concurrent mute can't be missed
+        session.setMuted(plugin.getMuteManager().isMuted(player.getUuid()));
+        localeBuckets.compute(session.getLocale(), (locale, players) -> {
+            if (players == null) {
+                players = ConcurrentHashMap.newKeySet();
+            }
+            players.add(player);
+            return players;
+        });
+        return session;
+    }
+    
+    public synchronized void close(UUID uuid) {
+        PlayerSession session = sessions.get(uuid);
+        if (session != null) {
+            release(session);
+        }
+    }
+    
+    public PlayerSession getSession(UUID uuid) {
+        return sessions.get(uuid);
+    }
+    
+    /**
+     * Visit every online session in slot order
+     */
+    public void forEach(Consumer<PlayerSession> action) {
+        PlayerSession[] current = slots;
+        int end = Math.min(highestSlot, current.length);
+        for (int i = 0; i < end; i++) {
+            PlayerSession session = current[i];
+            if (session != null) {
+                action.accept(session);
+            }
+        }
+    }
+    
+    public String getLocale(UUID uuid) {
+        PlayerSession session = sessions.get(uuid);
+        return session != null ? session.getLocale() : plugin.getLanguageManager().getDefaultLanguage();
+    }
+    
+    /**
+     * Online players grouped by locale, used to render broadcasts once per language
+     */
+    public Map<String, Set<PlayerRef>> getLocaleBuckets() {
+        return Collections.unmodifiableMap(localeBuckets);
+    }
+    
+    // Caller holds this
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (highestSlot == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+        }
+        return highestSlot++;
+    }
+    
+    // Caller holds this
+    private void release(PlayerSession session) {
+        sessions.remove(session.getUuid(), session);
+        removeFromBucket(session);
+        // A warmup still running must not teleport a player that left
+        session.setPendingTeleport(null);
+        int slot = session.getSlot();
+        if (slots[slot] == session) {
+            slots[slot] = null;
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+            }
+            freeSlots[freeCount++] = slot;
+        }
+    }
+    
+    private void removeFromBucket(PlayerSession session) {
+        localeBuckets.computeIfPresent(session.getLocale(), (locale, players) -> {
+            players.remove(session.getPlayerRef());
+            return players.isEmpty() ? null : players;
+        });
+    }
+    
+    private String resolveLocale(PlayerRef player) {
+        // Try to detect from client, otherwise use default
+        try {
+            String language = player.getLanguage();
+            if (language != null && !language.isEmpty()) {
+                return language.toLowerCase();
+            }
+        } catch (Exception e) {
+            // Fall through to the default language
+        }
+        return plugin.getLanguageManager().getDefaultLanguage();
+    }
+}
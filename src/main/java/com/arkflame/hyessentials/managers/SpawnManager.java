@@ -1,41 +1,66 @@
 package com.arkflame.hyessentials.managers;
 
-import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.arkflame.hyessentials.HyEssentials;
-import com.hypixel.hytale.builtin.hytalegenerator.fields.FastNoiseLite.Vector3;
+import com.arkflame.hyessentials.data.Location;
+import com.arkflame.hyessentials.storage.Records;
 
 public class SpawnManager {
+    private static final String COLLECTION = "spawn";
+    private static final String KEY = "spawn";
+    
     private final HyEssentials plugin;
-    private Vector3 spawn;
-    private final File spawnFile;
+    private volatile Location spawn;
+    private final AtomicBoolean dirty = new AtomicBoolean();
     
     public SpawnManager(HyEssentials plugin) {
         this.plugin = plugin;
-        try {
-        	// Just to be safe
-        	Path load = plugin.getDataDirectory().resolve("spawn.yml");
-        	if (Files.notExists(load)) { Files.createFile(load); }
-            this.spawnFile = load.toFile();
-        } catch (IOException e) { e.printStackTrace(); }
     }
     
-    public void load() {
-        plugin.getTaskRunner().runAsync(() -> {
-            if (spawnFile.exists()) {
-                // Load spawn from file
+    public CompletableFuture<Void> load() {
+        return plugin.getTaskRunner().runIo("spawn.load", () -> {
+            try {
+                byte[] record = plugin.getStorage().load(COLLECTION, KEY);
+                if (record != null) {
+                    spawn = Location.read(Records.reader(record));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         });
     }
     
-    public void setSpawn(Vector3 location) {
+    public void setSpawn(Location location) {
         this.spawn = location;
+        dirty.set(true);
     }
     
-    public Vector3 getSpawn() {
+    public Location getSpawn() {
         return spawn;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Write the spawn if it changed, called by the write-behind flusher
+     */
+    public void flush(boolean sync) throws IOException {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        
+        try {
+            Location location = spawn;
+            Map<String, byte[]> changes = new HashMap<>();
+            changes.put(KEY, location != null ? Records.encode(location::write) : null);
+            plugin.getStorage().write(COLLECTION, changes);
+        } catch (IOException | RuntimeException e) {
+            dirty.set(true);
+            throw e;
+        }
+    }
+}
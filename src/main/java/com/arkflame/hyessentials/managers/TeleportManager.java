@@ -1,27 +1,31 @@
 package com.arkflame.hyessentials.managers;
 
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import com.arkflame.hyessentials.HyEssentials;
-import com.hypixel.hytale.builtin.hytalegenerator.fields.FastNoiseLite.Vector3;
+import com.arkflame.hyessentials.data.Location;
+import com.arkflame.hyessentials.data.PlayerSession;
+import com.arkflame.hyessentials.tasks.ExpiringMap;
+import com.arkflame.hyessentials.tasks.TaskPriority;
 import com.hypixel.hytale.server.core.entity.entities.Player;
 import com.hypixel.hytale.server.core.modules.entity.teleport.PendingTeleport;
 import com.hypixel.hytale.server.core.modules.entity.teleport.Teleport;
+import com.hypixel.hytale.server.core.universe.Universe;
+import com.hypixel.hytale.server.core.universe.world.World;
 
 public class TeleportManager {
     private final HyEssentials plugin;
-    private final Map<UUID, PendingTeleport> pendingTeleports = new ConcurrentHashMap<>();
-    private final Map<UUID, Long> teleportCooldowns = new ConcurrentHashMap<>();
-    private final Map<UUID, UUID> tpaRequests = new ConcurrentHashMap<>();
+    private final ExpiringMap<UUID, Boolean> teleportCooldowns;
+    private final ExpiringMap<UUID, UUID> tpaRequests;
     
     public TeleportManager(HyEssentials plugin) {
         this.plugin = plugin;
+        this.teleportCooldowns = new ExpiringMap<>(plugin.getExpiryService());
+        this.tpaRequests = new ExpiringMap<>(plugin.getExpiryService());
     }
     
-    public void requestTeleport(Player player, Vector3 destination, Teleport type) {
+    public void requestTeleport(Player player, Location destination, Teleport type) {
         UUID uuid = player.getPlayerRef().getUuid();
         
         // Check cooldown
@@ -33,16 +37,19 @@ public class TeleportManager {
         }
         
         int warmup = plugin.getConfigManager().getTeleportWarmup();
+        // Warmups only exist while online, they live on the session and end with it
+        PlayerSession session = plugin.getSessionManager().getSession(uuid);
         
-        if (warmup > 0) {
+        if (warmup > 0 && session != null) {
             player.sendMessage(plugin.getLanguageManager().getMessage(player, "teleport_warmup")
                 .replace("{time}", String.valueOf(warmup)));
             
             PendingTeleport pending = new PendingTeleport();
-            pendingTeleports.put(uuid, pending);
+            session.setPendingTeleport(pending);
             
-            plugin.getTaskRunner().runDelayed(() -> {
-                if (pendingTeleports.remove(uuid) != null) {
+            plugin.getTaskRunner().runDelayed("teleport.warmup", TaskPriority.HIGH, () -> {
+                // A newer request or a cancel replaced this one
+                if (session.completePendingTeleport(pending)) {
                     executeTeleport(player, destination);
                     setCooldown(uuid);
                 }
@@ -53,29 +60,48 @@ public class TeleportManager {
         }
     }
     
-    private void executeTeleport(Player player, Vector3 destination) {
+    private void executeTeleport(Player player, Location destination) {
+        // A home or warp in a world that is gone must not land at the same coordinates in this one
+        String worldName = destination.getWorldName();
+        World world = worldName != null ? Universe.get().getWorld(worldName) : null;
+        if (world == null) {
+            player.sendMessage(plugin.getLanguageManager().getMessage(player, "teleport_world_missing"));
+            return;
+        }
+        
         // Store current location for /back
-        plugin.getBackManager().addLocation(player.getUuid(), player.getPosition());
+        plugin.getBackManager().addLocation(player.getUuid(), locationOf(player));
         
-        player.setPosition(destination);
+        if (world != player.getWorld()) {
+            player.setWorld(world);
+        }
+        player.setPosition(destination.toVector());
+        player.setRotation(destination.toRotation());
         player.sendMessage(plugin.getLanguageManager().getMessage(player, "teleport_success"));
     }
     
+    /**
+     * Where a player stands and which way they look
+     */
+    public static Location locationOf(Player player) {
+        return Location.of(player.getWorld().getName(), player.getPosition(), player.getRotation());
+    }
+    
     public void cancelTeleport(UUID uuid) {
-        pendingTeleports.remove(uuid);
+        PlayerSession session = plugin.getSessionManager().getSession(uuid);
+        if (session != null) {
+            session.setPendingTeleport(null);
+        }
     }
     
     public boolean hasPendingTeleport(UUID uuid) {
-        return pendingTeleports.containsKey(uuid);
+        PlayerSession session = plugin.getSessionManager().getSession(uuid);
+        return session != null && session.getPendingTeleport() != null;
     }
     
     public void sendTpaRequest(UUID sender, UUID target) {
-        tpaRequests.put(target, sender);
-        
-        // Auto-expire after 60 seconds
-        plugin.getTaskRunner().runAsyncDelayed(() -> {
-            tpaRequests.remove(target, sender);
-        }, 60, TimeUnit.SECONDS);
+        // Auto-expire after 60 seconds, a newer request replaces the old one
+        tpaRequests.put(target, sender, TimeUnit.SECONDS.toMillis(60));
     }
     
     public UUID getTpaRequest(UUID target) {
@@ -87,20 +113,17 @@ public class TeleportManager {
     }
     
     private boolean isOnCooldown(UUID uuid) {
-        Long cooldownEnd = teleportCooldowns.get(uuid);
-        return cooldownEnd != null && System.currentTimeMillis() < cooldownEnd;
+        return teleportCooldowns.containsKey(uuid);
     }
     
     private long getCooldownRemaining(UUID uuid) {
-        Long cooldownEnd = teleportCooldowns.get(uuid);
-        if (cooldownEnd == null) return 0;
-        return (cooldownEnd - System.currentTimeMillis()) / 1000;
+        return teleportCooldowns.getRemaining(uuid) / 1000;
     }
     
     private void setCooldown(UUID uuid) {
         int cooldown = plugin.getConfigManager().getTeleportCooldown();
         if (cooldown > 0) {
-            teleportCooldowns.put(uuid, System.currentTimeMillis() + (cooldown * 1000L));
+            teleportCooldowns.put(uuid, Boolean.TRUE, cooldown * 1000L);
         }
     }
 }
\ No newline at end of file
@@ -1,73 +1,323 @@
 package com.arkflame.hyessentials.managers;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 import com.arkflame.hyessentials.HyEssentials;
+import com.arkflame.hyessentials.data.UserData;
+import com.arkflame.hyessentials.storage.BinaryUserDataStore;
+import com.arkflame.hyessentials.storage.ProviderUserDataStore;
+import com.arkflame.hyessentials.storage.StoredUser;
+import com.arkflame.hyessentials.storage.UserCache;
+import com.arkflame.hyessentials.storage.UserDataStore;
 
 public class UserDataManager {
     private final HyEssentials plugin;
     private final File userDataFolder;
-    private final Map<UUID, UserData> loadedUsers = new ConcurrentHashMap<>();
-    
+    private final UserDataStore store;
+    private final UserCache cache;
+    // Players dropped from the cache, kept until the next flush has written them
+    private final Map<UUID, StoredUser> pendingWrites = new ConcurrentHashMap<>();
+    // Players between connecting and unloadUser, a load that finishes for anyone else is not pinned
+    private final Set<UUID> connected = ConcurrentHashMap.newKeySet();
+    // One load per player at a time, concurrent callers share its future
+    private final Map<UUID, CompletableFuture<UserData>> inFlight = new ConcurrentHashMap<>();
+    // Guards moving players in and out of memory together with their homes, cooldowns and history
+    private final Object residency = new Object();
+    // Snapshots are taken under this lock so writes reach the store in order
+    private final ReentrantLock writeLock = new ReentrantLock();
+
     public UserDataManager(HyEssentials plugin) {
         this.plugin = plugin;
         this.userDataFolder = plugin.getDataDirectory().resolve("userdata").toFile();
         userDataFolder.mkdirs();
+        this.store = createStore(plugin.getConfigManager().getUserStorageType());
+        this.cache = new UserCache(plugin.getConfigManager().getUserCacheSize(),
+            plugin.getConfigManager().getUserCacheIdleMillis());
+    }
+
+    private UserDataStore createStore(String type) {
+        if ("binary".equalsIgnoreCase(type)) {
+            try {
+                return new BinaryUserDataStore(plugin, userDataFolder.toPath());
+            } catch (IOException e) {
+                plugin.getLogger().atWarning().log("Could not open binary user data, falling back to shared storage: " + e.getMessage());
+            }
+        }
+        // Default, players go through the same provider as everything else
+        return new ProviderUserDataStore(plugin.getStorage());
     }
-    
+
+    /**
+     * Load a player that is joining, they stay in memory until unloadUser
+     */
     public CompletableFuture<UserData> loadUser(UUID uuid) {
-        return plugin.getTaskRunner().supplyAsync(() -> {
-            if (loadedUsers.containsKey(uuid)) {
-                return loadedUsers.get(uuid);
+        return load(uuid);
+    }
+
+    /**
+     * Start loading a connecting player so their data is warm by the time they are ready
+     */
+    public void prefetch(UUID uuid) {
+        load(uuid).exceptionally(t -> {
+            plugin.getLogger().atWarning().withCause(t).log("Failed to prefetch user data for " + uuid);
+            return null;
+        });
+    }
+
+    private CompletableFuture<UserData> load(UUID uuid) {
+        // Already in memory, no I/O hop
+        synchronized (residency) {
+            connected.add(uuid);
+            UserData data = resident(uuid, true);
+            if (data != null) {
+                return CompletableFuture.completedFuture(data);
             }
-            
-            File userFile = new File(userDataFolder, uuid.toString() + ".yml");
-            UserData data = new UserData(uuid);
-            
-            if (userFile.exists()) {
-                // Load from file using YML parser
-                // data.load(userFile);
+        }
+
+        CompletableFuture<UserData> future = new CompletableFuture<>();
+        CompletableFuture<UserData> existing = inFlight.putIfAbsent(uuid, future);
+        if (existing != null) {
+            return existing;
+        }
+
+        plugin.getTaskRunner().runIo("userdata.load", () -> {
+            try {
+                UserData data = acquire(uuid);
+                inFlight.remove(uuid, future);
+                future.complete(data);
+            } catch (Throwable t) {
+                inFlight.remove(uuid, future);
+                future.completeExceptionally(t);
             }
-            
-            loadedUsers.put(uuid, data);
+        });
+        return future;
+    }
+
+    /**
+     * Save a player that left and let the cache decide how long to keep them
+     */
+    public void unloadUser(UUID uuid) {
+        saveUser(uuid);
+        synchronized (residency) {
+            connected.remove(uuid);
+            release(cache.unpin(uuid));
+        }
+    }
+
+    private UserData acquire(UUID uuid) throws IOException {
+        // Store reads happen outside the lock, a release in between is picked up below
+        StoredUser stored = store.load(uuid);
+
+        synchronized (residency) {
+            UserData data = resident(uuid, false);
+            if (data == null) {
+                data = install(uuid, stored, true);
+            }
+            if (!connected.contains(uuid)) {
+                // Left before the load finished, unloadUser had nothing to unpin
+                release(cache.unpin(uuid));
+            }
+            return data;
+        }
+    }
+
+    // Caller holds residency
+    private UserData resident(UUID uuid, boolean count) {
+        UserData data = count ? cache.get(uuid) : cache.peek(uuid);
+        if (data != null) {
+            cache.pin(uuid, data);
             return data;
+        }
+
+        // Dropped but not written yet, newer than what the store has
+        StoredUser pending = pendingWrites.remove(uuid);
+        return pending != null ? install(uuid, pending, false) : null;
+    }
+
+    // Caller holds residency
+    private UserData install(UUID uuid, StoredUser stored, boolean fromStore) {
+        UserData data;
+        if (stored != null) {
+            data = stored.data();
+            plugin.getHomeManager().loadHomes(uuid, stored.homes());
+            plugin.getKitManager().loadCooldowns(uuid, stored.kitCooldowns());
+            plugin.getBackManager().loadHistory(uuid, stored.backHistory());
+        } else {
+            data = new UserData(uuid);
+        }
+
+        if (fromStore) {
+            // Applying the stored record is not a change
+            data.clearDirty();
+        }
+
+        cache.pin(uuid, data);
+        return data;
+    }
+
+    /**
+     * Take players the cache dropped out of memory, their record waits in pendingWrites for the next flush
+     */
+    private void release(List<UserData> dropped) {
+        synchronized (residency) {
+            for (UserData data : dropped) {
+                UUID uuid = data.getUuid();
+                if (cache.peek(uuid) != null) {
+                    continue;
+                }
+                pendingWrites.put(uuid, snapshot(data));
+                plugin.getHomeManager().unloadHomes(uuid);
+                plugin.getKitManager().unloadCooldowns(uuid);
+                plugin.getBackManager().unloadHistory(uuid);
+            }
+        }
+    }
+
+    /**
+     * Visit every player in the store as last written, players in memory may be newer
+     */
+    public void forEachStored(Consumer<StoredUser> visitor) throws IOException {
+        store.forEach(visitor);
+    }
+
+    /**
+     * Save a user, repeated calls while a save is still queued are merged into it
+     */
+    public CompletableFuture<Void> saveUser(UUID uuid) {
+        if (cache.peek(uuid) == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return plugin.getTaskRunner().runIoCoalesced("userdata.save", "userdata:" + uuid, () -> {
+            writeLock.lock();
+            try {
+                // Read at execution time so the latest state is written
+                UserData data = cache.peek(uuid);
+                if (data == null) {
+                    return;
+                }
+                data.clearDirty();
+                try {
+                    store.save(snapshot(data));
+                } catch (IOException e) {
+                    data.markDirty();
+                    throw new UncheckedIOException(e);
+                }
+            } finally {
+                writeLock.unlock();
+            }
         });
     }
-    
-    public void saveUser(UUID uuid) {
-        UserData data = loadedUsers.get(uuid);
+
+    /**
+     * Flag a player's record for the next write-behind flush
+     */
+    public void markDirty(UUID uuid) {
+        UserData data = cache.peek(uuid);
         if (data != null) {
-            plugin.getTaskRunner().runAsync(() -> {
-                File userFile = new File(userDataFolder, uuid.toString() + ".yml");
-                // Save to file using YML writer
-                // data.save(userFile);
-            });
+            data.markDirty();
         }
     }
-    
+
+    /**
+     * Write every dirty player as one batch, called by the write-behind flusher
+     * Idle offline players are dropped first so their last changes go out in the same batch
+     */
+    public void flush(boolean sync) throws IOException {
+        release(cache.expireIdle());
+
+        writeLock.lock();
+        try {
+            List<UserData> dirty = new ArrayList<>();
+            Map<UUID, StoredUser> released = new HashMap<>(pendingWrites);
+            try {
+                List<StoredUser> batch = new ArrayList<>();
+                for (UserData data : cache.values()) {
+                    if (data.clearDirty()) {
+                        dirty.add(data);
+                        batch.add(snapshot(data));
+                    }
+                }
+
+                for (Map.Entry<UUID, StoredUser> entry : released.entrySet()) {
+                    UserData data = entry.getValue().data();
+                    // Loaded again in the meantime, written from the cache instead
+                    if (cache.peek(entry.getKey()) == null && data.clearDirty()) {
+                        dirty.add(data);
+                        batch.add(entry.getValue());
+                    }
+                }
+
+                store.saveBatch(batch);
+                if (sync) {
+                    store.sync();
+                }
+            } catch (IOException | RuntimeException e) {
+                // Retried on the next flush
+                dirty.forEach(UserData::markDirty);
+                throw e;
+            }
+
+            // Holding the write lock means no older write of these players is still in flight
+            released.forEach(pendingWrites::remove);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gather everything persisted for a player from the managers that own it
+     */
+    private StoredUser snapshot(UserData data) {
+        UUID uuid = data.getUuid();
+        return new StoredUser(data,
+            plugin.getHomeManager().getHomeMap(uuid),
+            plugin.getKitManager().getCooldowns(uuid),
+            plugin.getBackManager().getHistory(uuid));
+    }
+
     public void saveAll() {
-        for (UUID uuid : loadedUsers.keySet()) {
-            saveUser(uuid);
+        for (UserData data : cache.values()) {
+            saveUser(data.getUuid());
+        }
+    }
+
+    /**
+     * Release the storage engine, dirty players are written by the final flush before this
+     */
+    public void close() {
+        try {
+            store.close();
+        } catch (IOException e) {
+            plugin.getLogger().atWarning().withCause(e).log("Failed to close the user data store");
         }
     }
-    
-    public UserData getUserData(UUID uuid) {
-        return loadedUsers.get(uuid);
+
+    public UserCache.Stats getCacheStats() {
+        return cache.stats();
     }
-    
+
     public boolean isFirstJoin(UUID uuid) {
-        UserData data = loadedUsers.get(uuid);
+        UserData data = cache.peek(uuid);
         return data == null || data.isFirstJoin();
     }
-    
+
     public void setFirstJoin(UUID uuid, boolean firstJoin) {
-        UserData data = loadedUsers.get(uuid);
+        UserData data = cache.peek(uuid);
         if (data != null) {
             data.setFirstJoin(firstJoin);
         }
     }
-}
\ No newline at end of file
+}
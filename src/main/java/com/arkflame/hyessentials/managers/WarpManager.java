@@ -1,42 +1,93 @@
 package com.arkflame.hyessentials.managers;
 
-import java.io.File;
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.arkflame.hyessentials.HyEssentials;
-import com.hypixel.hytale.builtin.hytalegenerator.fields.FastNoiseLite.Vector3;
+import com.arkflame.hyessentials.data.Location;
+import com.arkflame.hyessentials.data.PlayerSession;
+import com.arkflame.hyessentials.data.Warp;
+import com.arkflame.hyessentials.storage.Records;
+import com.arkflame.hyessentials.util.PrefixTrie;
+import com.arkflame.hyessentials.util.SpatialIndex;
 
 public class WarpManager {
+    private static final String COLLECTION = "warps";
+    private static final int INDEX_CELL_SIZE = 256;
+    
     private final HyEssentials plugin;
     private final Map<String, Warp> warps = new ConcurrentHashMap<>();
-    private final File warpsFile;
+    private final Map<String, Integer> warpPermissions = new ConcurrentHashMap<>();
+    // Keyed like warps, warps are few and spread out so cells are larger than for homes
+    private final SpatialIndex<String> index = new SpatialIndex<>(INDEX_CELL_SIZE);
+    private final PrefixTrie names = new PrefixTrie();
+    // Bumped whenever a warp is added or removed, so cached access sets are recomputed
+    private final AtomicInteger generation = new AtomicInteger();
+    // Keys changed since the last flush, written one by one so a failed load never wipes the rest
+    private final Set<String> dirtyKeys = ConcurrentHashMap.newKeySet();
     
     public WarpManager(HyEssentials plugin) {
         this.plugin = plugin;
-        try {
-        	// Just to be safe
-        	Path load = plugin.getDataDirectory().resolve("warps.yml");
-        	if (Files.notExists(load)) { Files.createFile(load); }
-            this.warpsFile = load.toFile();
-        } catch (IOException e) { e.printStackTrace(); }
     }
     
-    public void load() {
-        plugin.getTaskRunner().runAsync(() -> {
-            if (warpsFile.exists()) {
-                // Load warps from file
+    public CompletableFuture<Void> load() {
+        return plugin.getTaskRunner().runIo("warps.load", () -> {
+            try {
+                for (Map.Entry<String, byte[]> record : plugin.getStorage().loadAll(COLLECTION).entrySet()) {
+                    // Changed since an unload whose flush failed, newer than what is stored
+                    if (dirtyKeys.contains(record.getKey())) {
+                        continue;
+                    }
+                    DataInputStream in = Records.reader(record.getValue());
+                    Warp warp = new Warp(in.readUTF(), Location.read(in));
+                    warps.put(record.getKey(), warp);
+                    index.put(record.getKey(), warp.getLocation());
+                    warpPermissions.put(record.getKey(), plugin.getPermissionManager().getPermissionId("essentials.warp." + record.getKey()));
+                    names.add(warp.getName());
+                }
+                generation.incrementAndGet();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
             }
         });
     }
     
-    public void setWarp(String name, Vector3 location) {
-        warps.put(name.toLowerCase(), new Warp(name, location));
+    /**
+     * Drop every warp from memory once the warps module is unloaded, changes must be flushed first
+     */
+    public void unload() {
+        for (Map.Entry<String, Warp> entry : warps.entrySet()) {
+            index.remove(entry.getKey());
+            names.remove(entry.getValue().getName());
+        }
+        warps.clear();
+        warpPermissions.clear();
+        generation.incrementAndGet();
+    }
+    
+    public void setWarp(String name, Location location) {
+        String key = name.toLowerCase();
+        Warp previous = warps.put(key, new Warp(name, location));
+        index.put(key, location);
+        warpPermissions.put(key, plugin.getPermissionManager().getPermissionId("essentials.warp." + key));
+        if (previous != null) {
+            names.remove(previous.getName());
+        }
+        names.add(name);
+        generation.incrementAndGet();
+        dirtyKeys.add(key);
     }
     
     public Warp getWarp(String name) {
@@ -44,15 +95,119 @@ public class WarpManager {
     }
     
     public void deleteWarp(String name) {
-        warps.remove(name.toLowerCase());
+        String key = name.toLowerCase();
+        Warp previous = warps.remove(key);
+        index.remove(key);
+        warpPermissions.remove(key);
+        if (previous != null) {
+            names.remove(previous.getName());
+            generation.incrementAndGet();
+        }
+        dirtyKeys.add(key);
+    }
+    
+    /**
+     * Write warps if they changed, called by the write-behind flusher
+     */
+    public void flush(boolean sync) throws IOException {
+        if (dirtyKeys.isEmpty()) {
+            return;
+        }
+        
+        List<String> taken = new ArrayList<>();
+        try {
+            Map<String, byte[]> changes = new HashMap<>();
+            for (Iterator<String> iterator = dirtyKeys.iterator(); iterator.hasNext();) {
+                String key = iterator.next();
+                iterator.remove();
+                taken.add(key);
+                Warp warp = warps.get(key);
+                changes.put(key, warp != null ? encodeWarp(warp) : null);
+            }
+            plugin.getStorage().write(COLLECTION, changes);
+        } catch (IOException | RuntimeException e) {
+            dirtyKeys.addAll(taken);
+            throw e;
+        }
+    }
+    
+    private static byte[] encodeWarp(Warp warp) throws IOException {
+        return Records.encode(out -> {
+            out.writeUTF(warp.getName());
+            warp.getLocation().write(out);
+        });
     }
     
     public Set<String> getWarpNames() {
         return warps.keySet();
     }
     
+    /**
+     * Up to count warps a player may use closest to a location, closest first
+     */
+    public List<Warp> getNearestWarps(UUID uuid, Location location, int count) {
+        return toWarps(index.nearest(location, count, key -> hasAccess(uuid, key)));
+    }
+    
+    /**
+     * Warps a player may use within a radius of a location, closest first
+     */
+    public List<Warp> getWarpsWithin(UUID uuid, Location location, double radius) {
+        return toWarps(index.within(location, radius, key -> hasAccess(uuid, key)));
+    }
+    
+    private List<Warp> toWarps(List<SpatialIndex.Match<String>> matches) {
+        List<Warp> result = new ArrayList<>(matches.size());
+        for (SpatialIndex.Match<String> match : matches) {
+            Warp warp = warps.get(match.getKey());
+            if (warp != null) {
+                result.add(warp);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Up to limit warps a player may use starting with the prefix, for tab completion
+     */
+    public List<String> completeWarps(UUID uuid, String prefix, int limit) {
+        PlayerSession session = plugin.getSessionManager().getSession(uuid);
+        if (session == null) {
+            return names.complete(prefix, limit, name -> hasAccess(uuid, name));
+        }
+        Set<String> accessible = getAccessibleWarps(session);
+        return names.complete(prefix, limit, name -> accessible.contains(name.toLowerCase()));
+    }
+    
+    /**
+     * Keys of the warps an online player may use, checked once per permission or warp change
+     */
+    public Set<String> getAccessibleWarps(PlayerSession session) {
+        // Both read before checking, a change meanwhile makes the stored set stale right away
+        int version = session.getPermissionsVersion();
+        int current = generation.get();
+        Set<String> accessible = session.getWarpAccess().get(version, current);
+        if (accessible != null) {
+            return accessible;
+        }
+        
+        accessible = new HashSet<>();
+        for (Map.Entry<String, Integer> entry : warpPermissions.entrySet()) {
+            if (plugin.getPermissionManager().hasPermission(session, entry.getValue())) {
+                accessible.add(entry.getKey());
+            }
+        }
+        session.getWarpAccess().put(version, current, accessible);
+        return accessible;
+    }
+    
     public boolean hasAccess(UUID uuid, String warpName) {
-        return plugin.getPermissionManager().hasPermission(uuid, "essentials.warp." + warpName) ||
-               plugin.getPermissionManager().hasPermission(uuid, "essentials.warp.*");
+        // "essentials.warp.*" is resolved by the permission trie itself
+        String key = warpName.toLowerCase();
+        Integer permissionId = warpPermissions.get(key);
+        if (permissionId != null) {
+            return plugin.getPermissionManager().hasPermission(uuid, permissionId);
+        }
+        return plugin.getPermissionManager().hasPermission(uuid, "essentials.warp." + key);
     }
 }
\ No newline at end of file
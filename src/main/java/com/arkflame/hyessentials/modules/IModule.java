@@ -0,0 +1,43 @@
+package com.arkflame.hyessentials.modules;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * IModule - A feature that can be toggled on its own
+ * Lazy modules only register their command stubs and routed listeners at startup,
+ * their data is loaded on first use and dropped again after the idle time.
+ */
+public interface IModule {
+    String getName();
+
+    void onEnable();
+
+    /**
+     * Also called when a lazy module is unloaded for being idle, dirty data must be written
+     * and its manager's maps cleared so the memory is actually freed
+     */
+    void onDisable();
+
+    boolean isEnabled();
+
+    /** Load on first use of a command or event instead of at startup */
+    default boolean isLazy() {
+        return false;
+    }
+
+    /** Called once at registration, even for lazy modules, to hook listeners through ModuleManager#route */
+    default void onRegister() {
+    }
+
+    /** Read data files off the main thread, completes before onEnable */
+    default CompletableFuture<Void> load() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /** Commands of this module, registered as stubs that enable it when used */
+    default List<ModuleCommand> getCommands() {
+        return Collections.emptyList();
+    }
+}
@@ -0,0 +1,63 @@
+package com.arkflame.hyessentials.modules;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.arkflame.hyessentials.HyEssentials;
+import com.arkflame.hyessentials.commands.ModuleCommandAdapter;
+
+/**
+ * KitModule - /kit, /createkit and /delkit, kit definitions are only read once one of them is used
+ */
+public class KitModule implements IModule {
+    private final HyEssentials plugin;
+    private volatile boolean enabled;
+
+    public KitModule(HyEssentials plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public String getName() {
+        return "kits";
+    }
+
+    @Override
+    public boolean isLazy() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Void> load() {
+        return plugin.getKitManager().load();
+    }
+
+    @Override
+    public void onEnable() {
+        enabled = true;
+    }
+
+    @Override
+    public void onDisable() {
+        try {
+            plugin.getKitManager().flush(false);
+        } catch (IOException e) {
+            // Kept in memory, the write-behind flusher retries and the next load skips the changed keys
+            throw new UncheckedIOException(e);
+        }
+        plugin.getKitManager().unload();
+        enabled = false;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public List<ModuleCommand> getCommands() {
+        return ModuleCommandAdapter.kitCommands(plugin);
+    }
+}
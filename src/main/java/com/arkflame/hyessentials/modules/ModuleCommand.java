@@ -0,0 +1,14 @@
+package com.arkflame.hyessentials.modules;
+
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+
+/**
+ * ModuleCommand - Command owned by a module, only runs once the module is enabled
+ */
+public interface ModuleCommand {
+    String getName();
+
+    String getDescription();
+
+    void execute(CommandContext context);
+}
@@ -0,0 +1,29 @@
+package com.arkflame.hyessentials.modules;
+
+import javax.annotation.Nonnull;
+
+import com.arkflame.hyessentials.util.ColorCodec;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+
+/**
+ * ModuleCommandStub - Registered in place of a module command, enables the module before running it
+ */
+class ModuleCommandStub extends CommandBase {
+    private final ModuleManager moduleManager;
+    private final IModule module;
+    private final ModuleCommand command;
+
+    ModuleCommandStub(ModuleManager moduleManager, IModule module, ModuleCommand command) {
+        super(command.getName(), command.getDescription());
+        this.moduleManager = moduleManager;
+        this.module = module;
+        this.command = command;
+    }
+
+    @Override
+    protected void executeSync(@Nonnull CommandContext context) {
+        moduleManager.use(module, () -> command.execute(context),
+            error -> context.sendMessage(ColorCodec.parse("&c/" + command.getName() + " is unavailable right now, try again later")));
+    }
+}
@@ -0,0 +1,284 @@
+package com.arkflame.hyessentials.modules;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.arkflame.hyessentials.HyEssentials;
+import com.arkflame.hyessentials.tasks.TaskPriority;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+
+/**
+ * ModuleManager - Enables modules and routes their commands and events
+ * Eager modules are enabled at startup. Lazy ones are enabled by the first command or
+ * routed event that needs them and disabled again once unused for the idle time.
+ */
+public class ModuleManager {
+    private static final long MAX_SWEEP_MILLIS = 60_000;
+
+    private final HyEssentials plugin;
+    private final Map<String, Slot> modules = new LinkedHashMap<>();
+    private ScheduledFuture<?> idleSweep;
+
+    public ModuleManager(HyEssentials plugin) {
+        this.plugin = plugin;
+    }
+
+    public void registerModule(IModule module) {
+        modules.put(module.getName(), new Slot(module));
+        module.onRegister();
+    }
+
+    /**
+     * Enable every eager module, lazy ones wait for their first use
+     */
+    public void enableAll() {
+        for (Slot slot : modules.values()) {
+            if (!slot.module.isLazy()) {
+                enableModule(slot.module.getName());
+            }
+        }
+
+        long idleMillis = plugin.getConfigManager().getModuleIdleUnloadMillis();
+        if (idleMillis > 0 && getLazyModules().size() > 0) {
+            long period = Math.min(idleMillis, MAX_SWEEP_MILLIS);
+            idleSweep = plugin.getTaskRunner().runRepeating("modules.idle", () -> unloadIdle(idleMillis),
+                period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void disableAll() {
+        if (idleSweep != null) {
+            idleSweep.cancel(false);
+            idleSweep = null;
+        }
+        for (Slot slot : modules.values()) {
+            disable(slot);
+        }
+    }
+
+    /**
+     * Enable a module on the calling thread, waiting for its data
+     */
+    public void enableModule(String name) {
+        Slot slot = modules.get(name);
+        if (slot == null) {
+            return;
+        }
+        synchronized (slot) {
+            if (slot.activation != null) {
+                return;
+            }
+            try {
+                slot.module.load().join();
+                slot.module.onEnable();
+                slot.activation = CompletableFuture.completedFuture(null);
+                slot.lastUse = System.currentTimeMillis();
+                plugin.getLogger().atInfo().log("Enabled module: " + name);
+            } catch (RuntimeException e) {
+                plugin.getLogger().atWarning().log("Failed to enable module " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void disableModule(String name) {
+        Slot slot = modules.get(name);
+        if (slot != null) {
+            disable(slot);
+        }
+    }
+
+    /**
+     * Command stubs for every module, registering these doesn't load anything
+     */
+    public List<CommandBase> createCommandStubs() {
+        List<CommandBase> stubs = new ArrayList<>();
+        for (Slot slot : modules.values()) {
+            for (ModuleCommand command : slot.module.getCommands()) {
+                stubs.add(new ModuleCommandStub(this, slot.module, command));
+            }
+        }
+        return stubs;
+    }
+
+    /**
+     * Wrap a module's event handler so the event enables the module first
+     * While a lazy module loads, the event is handled once its data is ready, so handlers
+     * that must cancel or modify the event in place belong in eager modules
+     */
+    public <E> Consumer<E> route(IModule module, Consumer<E> handler) {
+        // A failed activation is already logged, the event is dropped
+        return event -> use(module, () -> handler.accept(event), error -> {});
+    }
+
+    /**
+     * Run an action of a module, enabling it first if needed
+     * If the module can't be enabled the action is skipped and onFailure runs on the tick queue
+     */
+    void use(IModule module, Runnable action, Consumer<Throwable> onFailure) {
+        Slot slot = modules.get(module.getName());
+        if (slot == null) {
+            return;
+        }
+
+        // Counted from before activation until the action is done, so the module can't be disabled under it
+        CompletableFuture<Void> activation;
+        synchronized (slot) {
+            slot.users++;
+            slot.lastUse = System.currentTimeMillis();
+            activation = activate(slot);
+        }
+        if (activation.isDone() && !activation.isCompletedExceptionally()) {
+            runInUse(slot, action);
+            return;
+        }
+        activation.whenComplete((ignored, error) -> {
+            if (error == null) {
+                // Finishes on the tick queue, so the action runs there too
+                runInUse(slot, action);
+            } else {
+                release(slot);
+                plugin.getTaskRunner().runSync("module.failed", TaskPriority.HIGH, () -> onFailure.accept(error));
+            }
+        });
+    }
+
+    private static void runInUse(Slot slot, Runnable action) {
+        try {
+            action.run();
+        } finally {
+            release(slot);
+        }
+    }
+
+    private static void release(Slot slot) {
+        synchronized (slot) {
+            slot.users--;
+            slot.lastUse = System.currentTimeMillis();
+        }
+    }
+
+    private CompletableFuture<Void> activate(Slot slot) {
+        synchronized (slot) {
+            if (slot.activation != null) {
+                return slot.activation;
+            }
+
+            IModule module = slot.module;
+            long start = System.currentTimeMillis();
+            CompletableFuture<Void> loaded;
+            try {
+                loaded = module.load();
+            } catch (RuntimeException e) {
+                loaded = CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<Void> activation = loaded.thenCompose(ignored -> {
+                CompletableFuture<Void> enabled = new CompletableFuture<>();
+                plugin.getTaskRunner().runSync("module.enable", TaskPriority.HIGH, () -> {
+                    try {
+                        module.onEnable();
+                        enabled.complete(null);
+                    } catch (Throwable t) {
+                        enabled.completeExceptionally(t);
+                    }
+                });
+                return enabled;
+            });
+            slot.activation = activation;
+
+            activation.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    plugin.getLogger().atWarning().withCause(error).log("Failed to enable module " + module.getName());
+                    synchronized (slot) {
+                        // Let the next use try again
+                        if (slot.activation == activation) {
+                            slot.activation = null;
+                        }
+                    }
+                } else {
+                    slot.lastUse = System.currentTimeMillis();
+                    plugin.getLogger().atInfo().log("Enabled module: " + module.getName()
+                        + " (" + (System.currentTimeMillis() - start) + "ms on first use)");
+                }
+            });
+            return activation;
+        }
+    }
+
+    /**
+     * Disable an enabled module that nothing is using, false if it was left as is
+     */
+    private boolean disable(Slot slot) {
+        synchronized (slot) {
+            CompletableFuture<Void> activation = slot.activation;
+            // Still loading or running an action, left alone until both are done
+            if (activation == null || !activation.isDone() || slot.users > 0) {
+                return false;
+            }
+            slot.activation = null;
+            if (activation.isCompletedExceptionally()) {
+                return false;
+            }
+            try {
+                slot.module.onDisable();
+            } catch (Exception e) {
+                plugin.getLogger().atWarning().log("Failed to disable module " + slot.module.getName() + ": " + e.getMessage());
+            }
+            return true;
+        }
+    }
+
+    private void unloadIdle(long idleMillis) {
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        for (Slot slot : modules.values()) {
+            if (slot.module.isLazy() && slot.lastUse < cutoff && isEnabled(slot) && disable(slot)) {
+                plugin.getLogger().atInfo().log("Unloaded idle module: " + slot.module.getName());
+            }
+        }
+    }
+
+    private static boolean isEnabled(Slot slot) {
+        CompletableFuture<Void> activation = slot.activation;
+        return activation != null && activation.isDone() && !activation.isCompletedExceptionally();
+    }
+
+    public Set<String> getEnabledModules() {
+        Set<String> enabled = new HashSet<>();
+        for (Slot slot : modules.values()) {
+            if (isEnabled(slot)) {
+                enabled.add(slot.module.getName());
+            }
+        }
+        return enabled;
+    }
+
+    public Set<String> getLazyModules() {
+        Set<String> lazy = new HashSet<>();
+        for (Slot slot : modules.values()) {
+            if (slot.module.isLazy()) {
+                lazy.add(slot.module.getName());
+            }
+        }
+        return lazy;
+    }
+
+    private static final class Slot {
+        private final IModule module;
+        // Null while not enabled, shared by every use that arrives during the load
+        private volatile CompletableFuture<Void> activation;
+        private volatile long lastUse;
+        // Uses between their start and the end of their action, guarded by the slot
+        private int users;
+
+        Slot(IModule module) {
+            this.module = module;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.arkflame.hyessentials.permissions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * PermissionMeta - Index of numeric suffix nodes like "essentials.sethome.5"
+ * Keyed by the node without its suffix, keeps the highest value granted
+ */
+public final class PermissionMeta {
+    private final Map<String, Integer> values = new HashMap<>();
+    
+    /**
+     * Index a node if its last segment is a non negative number
+     */
+    public void accept(String permission) {
+        int dot = permission.lastIndexOf('.');
+        if (dot <= 0 || dot == permission.length() - 1) {
+            return;
+        }
+        
+        int value = 0;
+        for (int i = dot + 1; i < permission.length(); i++) {
+            char c = permission.charAt(i);
+            if (c < '0' || c > '9') {
+                return;
+            }
+            try {
+                value = Math.addExact(Math.multiplyExact(value, 10), c - '0');
+            } catch (ArithmeticException e) {
+                // Overflow, not a usable meta value
+                return;
+            }
+        }
+        
+        values.merge(permission.substring(0, dot), value, Math::max);
+    }
+    
+    public int getInt(String key, int defaultValue) {
+        Integer value = values.get(key);
+        return value != null ? value : defaultValue;
+    }
+}
@@ -0,0 +1,41 @@
+package com.arkflame.hyessentials.permissions;
+
+import com.arkflame.hyessentials.util.Interner;
+
+/**
+ * PermissionRegistry - Interns permission nodes into dense int ids
+ * Ids are never reused, so they can index bitsets for the lifetime of the server
+ */
+public final class PermissionRegistry {
+    private static final PermissionRegistry INSTANCE = new PermissionRegistry();
+    
+    private final Interner nodes = new Interner(256);
+    
+    private PermissionRegistry() {}
+    
+    public static PermissionRegistry get() {
+        return INSTANCE;
+    }
+    
+    /**
+     * Get the id of a node, registering it if it was never seen before
+     */
+    public int intern(String permission) {
+        return nodes.intern(permission);
+    }
+    
+    /**
+     * Get the id of a node without registering it, -1 if unknown
+     */
+    public int lookup(String permission) {
+        return nodes.lookup(permission);
+    }
+    
+    public String nameOf(int id) {
+        return nodes.nameOf(id);
+    }
+    
+    public int size() {
+        return nodes.size();
+    }
+}
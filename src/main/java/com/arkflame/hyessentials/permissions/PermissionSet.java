@@ -0,0 +1,81 @@
+package com.arkflame.hyessentials.permissions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * PermissionSet - Set of interned permission ids backed by a bitset
+ * Writes copy the words so readers never need to lock
+ */
+public final class PermissionSet {
+    private volatile long[] words = new long[0];
+    
+    public boolean contains(int id) {
+        long[] current = words;
+        int index = id >>> 6;
+        return index < current.length && (current[index] & (1L << id)) != 0;
+    }
+    
+    public boolean contains(String permission) {
+        int id = PermissionRegistry.get().lookup(permission);
+        return id >= 0 && contains(id);
+    }
+    
+    public void add(String permission) {
+        add(PermissionRegistry.get().intern(permission));
+    }
+    
+    public synchronized void add(int id) {
+        int index = id >>> 6;
+        long[] updated = Arrays.copyOf(words, Math.max(words.length, index + 1));
+        updated[index] |= 1L << id;
+        words = updated;
+    }
+    
+    public synchronized void addAll(PermissionSet other) {
+        long[] source = other.words;
+        long[] updated = Arrays.copyOf(words, Math.max(words.length, source.length));
+        for (int i = 0; i < source.length; i++) {
+            updated[i] |= source[i];
+        }
+        words = updated;
+    }
+    
+    public void remove(String permission) {
+        int id = PermissionRegistry.get().lookup(permission);
+        if (id >= 0) {
+            remove(id);
+        }
+    }
+    
+    public synchronized void remove(int id) {
+        int index = id >>> 6;
+        if (index >= words.length) {
+            return;
+        }
+        long[] updated = words.clone();
+        updated[index] &= ~(1L << id);
+        words = updated;
+    }
+    
+    public void forEach(IntConsumer action) {
+        long[] current = words;
+        for (int i = 0; i < current.length; i++) {
+            long word = current[i];
+            while (word != 0) {
+                int bit = Long.numberOfTrailingZeros(word);
+                action.accept((i << 6) + bit);
+                word &= word - 1;
+            }
+        }
+    }
+    
+    public List<String> toNames() {
+        PermissionRegistry registry = PermissionRegistry.get();
+        List<String> names = new ArrayList<>();
+        forEach(id -> names.add(registry.nameOf(id)));
+        return names;
+    }
+}
@@ -0,0 +1,142 @@
+package com.arkflame.hyessentials.permissions;
+
+/**
+ * PermissionTrie - Permission nodes compiled into a tree of dot separated segments
+ * Resolves exact, "*" and "prefix.*" grants in a single walk without allocating
+ */
+public final class PermissionTrie {
+
+    private final Node root = new Node();
+
+    public static PermissionTrie compile(Iterable<String> permissions) {
+        PermissionTrie trie = new PermissionTrie();
+        for (String permission : permissions) {
+            trie.add(permission);
+        }
+        return trie;
+    }
+
+    /**
+     * Add a permission node, "*" segments at the end of a node grant everything below it
+     */
+    public void add(String permission) {
+        Node node = root;
+        int length = permission.length();
+        int start = 0;
+
+        while (true) {
+            int end = permission.indexOf('.', start);
+            if (end < 0) end = length;
+
+            if (end == length && end - start == 1 && permission.charAt(start) == '*') {
+                node.wildcard = true;
+                return;
+            }
+
+            node = node.getOrCreate(permission, start, end);
+            if (end == length) {
+                node.granted = true;
+                return;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Check whether a permission is granted by any compiled node
+     */
+    public boolean matches(String permission) {
+        Node node = root;
+        int length = permission.length();
+        int start = 0;
+
+        while (true) {
+            if (node.wildcard) return true;
+
+            int end = permission.indexOf('.', start);
+            if (end < 0) end = length;
+
+            node = node.find(permission, start, end);
+            if (node == null) return false;
+            if (end == length) return node.granted;
+            start = end + 1;
+        }
+    }
+
+    public boolean isEmpty() {
+        return root.size == 0 && !root.wildcard;
+    }
+
+    /**
+     * A single segment, children are kept in an open addressed table
+     * so lookups can hash a region of the queried string in place
+     */
+    private static final class Node {
+        private String[] keys = new String[4];
+        private Node[] children = new Node[4];
+        private int size;
+        private boolean granted;
+        private boolean wildcard;
+
+        Node find(String source, int start, int end) {
+            int mask = keys.length - 1;
+            int index = hash(source, start, end) & mask;
+            int length = end - start;
+
+            String key;
+            while ((key = keys[index]) != null) {
+                if (key.length() == length && key.regionMatches(0, source, start, length)) {
+                    return children[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return null;
+        }
+
+        Node getOrCreate(String source, int start, int end) {
+            Node existing = find(source, start, end);
+            if (existing != null) return existing;
+
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+
+            Node child = new Node();
+            insert(source.substring(start, end), child);
+            return child;
+        }
+
+        private void insert(String key, Node child) {
+            int mask = keys.length - 1;
+            int index = hash(key, 0, key.length()) & mask;
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            children[index] = child;
+            size++;
+        }
+
+        private void resize() {
+            String[] oldKeys = keys;
+            Node[] oldChildren = children;
+            keys = new String[oldKeys.length * 2];
+            children = new Node[oldKeys.length * 2];
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != null) {
+                    insert(oldKeys[i], oldChildren[i]);
+                }
+            }
+        }
+
+        private static int hash(String source, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + source.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
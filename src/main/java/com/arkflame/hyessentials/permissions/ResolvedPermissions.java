@@ -0,0 +1,62 @@
+package com.arkflame.hyessentials.permissions;
+
+import java.util.Arrays;
+
+/**
+ * ResolvedPermissions - Effective permissions of a single player
+ * Nodes are resolved through the trie the first time they are checked and then
+ * remembered in a bitset, so only nodes the player is actually checked for cost a match
+ */
+public final class ResolvedPermissions {
+    private static final long[] EMPTY = new long[0];
+    
+    private final PermissionTrie trie;
+    private final PermissionMeta meta;
+    
+    // Interleaved words: [2n] = resolved bits, [2n + 1] = granted bits
+    private volatile long[] words = EMPTY;
+    
+    public ResolvedPermissions(PermissionTrie trie, PermissionMeta meta) {
+        this.trie = trie;
+        this.meta = meta;
+    }
+    
+    /**
+     * Check a node by name, nodes nobody interned are matched without registering them
+     */
+    public boolean has(String permission) {
+        int id = PermissionRegistry.get().lookup(permission);
+        return id >= 0 ? has(id) : trie.matches(permission);
+    }
+    
+    public boolean has(int id) {
+        long[] current = words;
+        int index = (id >>> 6) << 1;
+        long bit = 1L << id;
+        if (index < current.length && (current[index] & bit) != 0) {
+            return (current[index + 1] & bit) != 0;
+        }
+        
+        boolean result = trie.matches(PermissionRegistry.get().nameOf(id));
+        remember(id, result);
+        return result;
+    }
+    
+    /**
+     * Get the highest numeric suffix granted for a node, e.g. "essentials.sethome" for "essentials.sethome.5"
+     */
+    public int getIntMeta(String key, int defaultValue) {
+        return meta.getInt(key, defaultValue);
+    }
+    
+    private synchronized void remember(int id, boolean granted) {
+        int index = (id >>> 6) << 1;
+        long bit = 1L << id;
+        long[] updated = Arrays.copyOf(words, Math.max(words.length, index + 2));
+        updated[index] |= bit;
+        if (granted) {
+            updated[index + 1] |= bit;
+        }
+        words = updated;
+    }
+}
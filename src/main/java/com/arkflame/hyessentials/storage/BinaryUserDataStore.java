@@ -0,0 +1,594 @@
+package com.arkflame.hyessentials.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import com.arkflame.hyessentials.HyEssentials;
+
+/**
+ * BinaryUserDataStore - All players in one append-only data file
+ * A memory-mapped open addressing index maps each UUID to its latest record,
+ * so a lookup is one probe plus one positioned read. Superseded records are
+ * reclaimed by compaction once they make up most of the file.
+ *
+ * Record layout: magic, uuid msb, uuid lsb, payload length, payload, crc32 of payload
+ */
+public class BinaryUserDataStore implements UserDataStore {
+    private static final int RECORD_MAGIC = 0x48455544;
+    private static final int RECORD_HEADER = 4 + 8 + 8 + 4;
+    private static final int RECORD_TRAILER = 4;
+    private static final int MAX_PAYLOAD = 16 * 1024 * 1024;
+
+    private static final int INDEX_MAGIC = 0x48454958;
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 32;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.7;
+
+    // Index header fields
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_SIZE = 12;
+    private static final int H_DATA_END = 16;
+    private static final int H_DEAD_BYTES = 24;
+    // Set while offsets may not match the data file, forces a full rebuild on open
+    private static final int H_REBUILDING = 32;
+
+    // Index slot fields, offset is stored plus one so zero means empty
+    private static final int S_MSB = 0;
+    private static final int S_LSB = 8;
+    private static final int S_OFFSET = 16;
+    private static final int S_LENGTH = 24;
+
+    private static final long COMPACT_MIN_BYTES = 4L * 1024 * 1024;
+
+    private final HyEssentials plugin;
+    private final Path dataPath;
+    private final Path indexPath;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compactionQueued = new AtomicBoolean();
+
+    private FileChannel data;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int size;
+    private long dataEnd;
+    private long deadBytes;
+
+    public BinaryUserDataStore(HyEssentials plugin, Path folder) throws IOException {
+        this.plugin = plugin;
+        this.dataPath = folder.resolve("users.dat");
+        this.indexPath = folder.resolve("users.idx");
+        Files.createDirectories(folder);
+
+        this.data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        openIndex();
+    }
+
+    @Override
+    public StoredUser load(UUID uuid) throws IOException {
+        ByteBuffer record;
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (slot < 0) {
+                return null;
+            }
+            int position = slotPosition(slot);
+            long offset = index.getLong(position + S_OFFSET) - 1;
+            int length = index.getInt(position + S_LENGTH);
+
+            record = ByteBuffer.allocate(length);
+            readFully(data, record, offset);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        record.flip();
+        if (record.getInt() != RECORD_MAGIC
+                || record.getLong() != uuid.getMostSignificantBits()
+                || record.getLong() != uuid.getLeastSignificantBits()) {
+            throw new IOException("Corrupted user record for " + uuid);
+        }
+
+        byte[] payload = new byte[record.getInt()];
+        record.get(payload);
+        if (record.getInt() != checksum(payload)) {
+            throw new IOException("Checksum mismatch in user record for " + uuid);
+        }
+        return UserDataCodec.decode(uuid, payload);
+    }
+
+    /**
+     * Visit the latest record of every player, the index is only locked while listing them
+     */
+    @Override
+    public void forEach(Consumer<StoredUser> visitor) throws IOException {
+        List<UUID> uuids;
+        lock.readLock().lock();
+        try {
+            uuids = new ArrayList<>(size);
+            for (int slot = 0; slot < capacity; slot++) {
+                int position = slotPosition(slot);
+                if (index.getLong(position + S_OFFSET) != 0) {
+                    uuids.add(new UUID(index.getLong(position + S_MSB), index.getLong(position + S_LSB)));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (UUID uuid : uuids) {
+            StoredUser user = load(uuid);
+            if (user != null) {
+                visitor.accept(user);
+            }
+        }
+    }
+
+    @Override
+    public void save(StoredUser user) throws IOException {
+        saveBatch(List.of(user));
+    }
+
+    /**
+     * Append all records with a single write, the index is updated once they are in the file
+     */
+    @Override
+    public void saveBatch(Collection<StoredUser> users) throws IOException {
+        if (users.isEmpty()) {
+            return;
+        }
+
+        List<byte[]> payloads = new ArrayList<>(users.size());
+        int total = 0;
+        for (StoredUser user : users) {
+            byte[] payload = UserDataCodec.encode(user);
+            payloads.add(payload);
+            total += RECORD_HEADER + payload.length + RECORD_TRAILER;
+        }
+
+        ByteBuffer batch = ByteBuffer.allocate(total);
+        int i = 0;
+        for (StoredUser user : users) {
+            UUID uuid = user.data().getUuid();
+            byte[] payload = payloads.get(i++);
+            batch.putInt(RECORD_MAGIC)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .putInt(payload.length)
+                .put(payload)
+                .putInt(checksum(payload));
+        }
+        batch.flip();
+
+        lock.writeLock().lock();
+        try {
+            long offset = dataEnd;
+            writeFully(data, batch, offset);
+            dataEnd = offset + total;
+
+            i = 0;
+            for (StoredUser user : users) {
+                UUID uuid = user.data().getUuid();
+                int length = RECORD_HEADER + payloads.get(i++).length + RECORD_TRAILER;
+                put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), offset, length);
+                offset += length;
+            }
+            writeHeader();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        scheduleCompactionIfNeeded();
+    }
+
+    /**
+     * Make appended records and the index durable
+     */
+    @Override
+    public void sync() throws IOException {
+        lock.writeLock().lock();
+        try {
+            data.force(false);
+            index.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            data.force(false);
+            index.force();
+            data.close();
+            indexChannel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int getUserCount() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrite the data file with only the latest record of every player
+     * Live records are copied while saves go on, the write lock is only taken to copy
+     * what was appended meanwhile and to swap the files.
+     */
+    public synchronized void compact() throws IOException {
+        Path compactPath = dataPath.resolveSibling("users.dat.compact");
+
+        // Records below the snapshot end never change, so they can be copied without the lock
+        long[] oldOffsets;
+        int[] lengths;
+        long snapshotEnd;
+        lock.readLock().lock();
+        try {
+            oldOffsets = new long[size];
+            lengths = new int[size];
+            int count = 0;
+            for (int slot = 0; slot < capacity; slot++) {
+                int position = slotPosition(slot);
+                long stored = index.getLong(position + S_OFFSET);
+                if (stored != 0) {
+                    oldOffsets[count] = stored - 1;
+                    lengths[count] = index.getInt(position + S_LENGTH);
+                    count++;
+                }
+            }
+            snapshotEnd = dataEnd;
+        } finally {
+            lock.readLock().unlock();
+        }
+        sortByOffset(oldOffsets, lengths);
+
+        try (FileChannel target = FileChannel.open(compactPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long[] newOffsets = new long[oldOffsets.length];
+            long written = 0;
+            for (int i = 0; i < oldOffsets.length; i++) {
+                newOffsets[i] = written;
+                written += copyRecord(target, oldOffsets[i], lengths[i], written);
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (!data.isOpen()) {
+                    return;
+                }
+
+                // Records appended since the snapshot go to the tail, the rest were copied above
+                long[] slotOffsets = new long[capacity];
+                for (int slot = 0; slot < capacity; slot++) {
+                    int position = slotPosition(slot);
+                    long stored = index.getLong(position + S_OFFSET);
+                    if (stored == 0) {
+                        continue;
+                    }
+                    if (stored - 1 >= snapshotEnd) {
+                        slotOffsets[slot] = written;
+                        written += copyRecord(target, stored - 1, index.getInt(position + S_LENGTH), written);
+                    } else {
+                        slotOffsets[slot] = newOffsets[Arrays.binarySearch(oldOffsets, stored - 1)];
+                    }
+                }
+                target.force(false);
+
+                // Offsets are about to point into the new file, a crash from here on rebuilds from a scan
+                index.putInt(H_REBUILDING, 1);
+                index.force();
+
+                try {
+                    data.close();
+                    Files.move(compactPath, dataPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    // The old file is still in place and the index still matches it
+                    data = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    index.putInt(H_REBUILDING, 0);
+                    index.force();
+                    throw e;
+                }
+                data = FileChannel.open(dataPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+                long reclaimed = dataEnd - written;
+                for (int slot = 0; slot < capacity; slot++) {
+                    int position = slotPosition(slot);
+                    if (index.getLong(position + S_OFFSET) != 0) {
+                        index.putLong(position + S_OFFSET, slotOffsets[slot] + 1);
+                    }
+                }
+                dataEnd = written;
+                deadBytes = 0;
+                writeHeader();
+                index.putInt(H_REBUILDING, 0);
+                index.force();
+
+                plugin.getLogger().atInfo().log("Compacted user data, reclaimed " + (reclaimed / 1024) + " KiB");
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            Files.deleteIfExists(compactPath);
+        }
+    }
+
+    private int copyRecord(FileChannel target, long offset, int length, long targetOffset) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(data, record, offset);
+        record.flip();
+        writeFully(target, record, targetOffset);
+        return length;
+    }
+
+    // Sorts offsets ascending with their lengths, so the copy reads the old file front to back
+    private static void sortByOffset(long[] offsets, int[] lengths) {
+        long[] byOffset = offsets.clone();
+        int[] byLength = lengths.clone();
+        Integer[] order = new Integer[offsets.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> byOffset[i]));
+        for (int i = 0; i < order.length; i++) {
+            offsets[i] = byOffset[order[i]];
+            lengths[i] = byLength[order[i]];
+        }
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        boolean needed;
+        lock.readLock().lock();
+        try {
+            needed = dataEnd > COMPACT_MIN_BYTES && deadBytes * 2 > dataEnd;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (needed && compactionQueued.compareAndSet(false, true)) {
+            try {
+                plugin.getTaskRunner().runIo("userdata.compact", () -> {
+                    try {
+                        compact();
+                    } catch (IOException e) {
+                        plugin.getLogger().atWarning().withCause(e).log("Failed to compact user data");
+                    } finally {
+                        compactionQueued.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Final flush during shutdown, compaction waits for the next start
+                compactionQueued.set(false);
+            }
+        }
+    }
+
+    // Index
+
+    private void openIndex() throws IOException {
+        if (indexChannel.size() >= HEADER_SIZE) {
+            MappedByteBuffer header = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (header.getInt(H_MAGIC) == INDEX_MAGIC && header.getInt(H_VERSION) == INDEX_VERSION) {
+                int storedCapacity = header.getInt(H_CAPACITY);
+                if (Integer.bitCount(storedCapacity) == 1
+                        && indexChannel.size() >= HEADER_SIZE + (long) storedCapacity * SLOT_SIZE) {
+                    mapIndex(storedCapacity);
+                    size = index.getInt(H_SIZE);
+                    dataEnd = index.getLong(H_DATA_END);
+                    deadBytes = index.getLong(H_DEAD_BYTES);
+
+                    if (index.getInt(H_REBUILDING) == 0 && dataEnd <= data.size()) {
+                        // Pick up records appended after the index was last written
+                        recover(dataEnd);
+                        return;
+                    }
+                }
+            }
+        }
+
+        plugin.getLogger().atWarning().log("Rebuilding user data index from " + dataPath.getFileName());
+        mapIndex(Math.max(capacity, INITIAL_CAPACITY));
+        clearIndex();
+        recover(0);
+    }
+
+    /**
+     * Index every valid record from the given offset, a torn record at the end is cut off
+     */
+    private void recover(long from) throws IOException {
+        long position = from;
+        long end = data.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+
+        while (position + RECORD_HEADER + RECORD_TRAILER <= end) {
+            header.clear();
+            readFully(data, header, position);
+            header.flip();
+
+            int magic = header.getInt();
+            long msb = header.getLong();
+            long lsb = header.getLong();
+            int length = header.getInt();
+            long recordLength = RECORD_HEADER + (long) length + RECORD_TRAILER;
+            if (magic != RECORD_MAGIC || length < 0 || length > MAX_PAYLOAD || position + recordLength > end) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(length + RECORD_TRAILER);
+            readFully(data, body, position + RECORD_HEADER);
+            body.flip();
+            byte[] payload = new byte[length];
+            body.get(payload);
+            if (body.getInt() != checksum(payload)) {
+                break;
+            }
+
+            put(msb, lsb, position, (int) recordLength);
+            position += recordLength;
+        }
+
+        if (position < end) {
+            plugin.getLogger().atWarning().log("Discarding " + (end - position) + " trailing bytes of incomplete user data");
+            data.truncate(position);
+        }
+        dataEnd = position;
+        index.putInt(H_REBUILDING, 0);
+        writeHeader();
+    }
+
+    private void put(long msb, long lsb, long offset, int length) throws IOException {
+        int slot = findSlot(msb, lsb);
+        if (slot >= 0) {
+            deadBytes += index.getInt(slotPosition(slot) + S_LENGTH);
+        } else {
+            if (size + 1 > capacity * MAX_LOAD) {
+                grow();
+                slot = findSlot(msb, lsb);
+            }
+            slot = -slot - 1;
+            size++;
+        }
+
+        int position = slotPosition(slot);
+        index.putLong(position + S_MSB, msb);
+        index.putLong(position + S_LSB, lsb);
+        index.putInt(position + S_LENGTH, length);
+        // Written last, a non-zero offset is what marks the slot used
+        index.putLong(position + S_OFFSET, offset + 1);
+    }
+
+    /**
+     * Double the index in place, a crash mid-way leaves the rebuilding flag set
+     */
+    private void grow() throws IOException {
+        int oldCapacity = capacity;
+        long[] entries = new long[size * 4];
+        int count = 0;
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int position = slotPosition(slot);
+            long stored = index.getLong(position + S_OFFSET);
+            if (stored != 0) {
+                entries[count++] = index.getLong(position + S_MSB);
+                entries[count++] = index.getLong(position + S_LSB);
+                entries[count++] = stored - 1;
+                entries[count++] = index.getInt(position + S_LENGTH);
+            }
+        }
+
+        long end = dataEnd;
+        long dead = deadBytes;
+        index.putInt(H_REBUILDING, 1);
+        mapIndex(oldCapacity * 2);
+        clearIndex();
+
+        for (int i = 0; i < count; i += 4) {
+            put(entries[i], entries[i + 1], entries[i + 2], (int) entries[i + 3]);
+        }
+        dataEnd = end;
+        deadBytes = dead;
+        index.putInt(H_REBUILDING, 0);
+        writeHeader();
+    }
+
+    private int findSlot(long msb, long lsb) {
+        int mask = capacity - 1;
+        int slot = mix(msb, lsb) & mask;
+        while (true) {
+            int position = slotPosition(slot);
+            if (index.getLong(position + S_OFFSET) == 0) {
+                return -slot - 1;
+            }
+            if (index.getLong(position + S_MSB) == msb && index.getLong(position + S_LSB) == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void mapIndex(int newCapacity) throws IOException {
+        this.capacity = newCapacity;
+        this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+    }
+
+    private void clearIndex() {
+        for (int position = 0; position < index.capacity(); position += 8) {
+            index.putLong(position, 0L);
+        }
+        size = 0;
+        dataEnd = 0;
+        deadBytes = 0;
+        index.putInt(H_MAGIC, INDEX_MAGIC);
+        index.putInt(H_VERSION, INDEX_VERSION);
+        index.putInt(H_REBUILDING, 1);
+        writeHeader();
+    }
+
+    private void writeHeader() {
+        index.putInt(H_CAPACITY, capacity);
+        index.putInt(H_SIZE, size);
+        index.putLong(H_DATA_END, dataEnd);
+        index.putLong(H_DEAD_BYTES, deadBytes);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int mix(long msb, long lsb) {
+        long h = msb ^ Long.rotateLeft(lsb, 32);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of user data file");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+}
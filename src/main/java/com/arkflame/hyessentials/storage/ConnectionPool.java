@@ -0,0 +1,90 @@
+package com.arkflame.hyessentials.storage;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConnectionPool - Small fixed size JDBC pool for the embedded database
+ * Connections are opened lazily, checked on borrow and kept with auto commit off
+ */
+final class ConnectionPool {
+    private static final long BORROW_TIMEOUT_SECONDS = 10;
+    
+    private final String url;
+    // DriverManager only finds drivers visible to the context classloader, which isn't the plugin's
+    private final Driver driver = new org.h2.Driver();
+    private final BlockingQueue<Connection> idle;
+    private final Semaphore permits;
+    private volatile boolean closed;
+    
+    ConnectionPool(String url, int size) {
+        this.url = url;
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.permits = new Semaphore(size, true);
+    }
+    
+    Connection borrow() throws SQLException {
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a database connection", e);
+        }
+        if (closed) {
+            permits.release();
+            throw new SQLException("Connection pool is closed");
+        }
+        
+        try {
+            Connection connection = idle.poll();
+            if (connection != null && connection.isValid(1)) {
+                return connection;
+            }
+            closeQuietly(connection);
+            
+            connection = driver.connect(url, new Properties());
+            if (connection == null) {
+                throw new SQLException("Not an H2 url: " + url);
+            }
+            connection.setAutoCommit(false);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    void release(Connection connection) {
+        if (closed || !idle.offer(connection)) {
+            closeQuietly(connection);
+        }
+        permits.release();
+    }
+    
+    void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            closeQuietly(connection);
+        }
+    }
+    
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Already unusable
+        }
+    }
+}
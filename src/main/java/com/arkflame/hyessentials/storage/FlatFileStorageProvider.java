@@ -0,0 +1,151 @@
+package com.arkflame.hyessentials.storage;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.arkflame.hyessentials.util.AtomicFiles;
+
+/**
+ * FlatFileStorageProvider - One directory per collection and one file per record
+ * Each record file is replaced atomically, a write touching several records is not
+ * atomic as a whole. Needs no setup and suits small servers.
+ */
+public class FlatFileStorageProvider implements StorageProvider {
+    private static final String EXTENSION = ".dat";
+    
+    private final Path root;
+    private final Map<String, Object> locks = new ConcurrentHashMap<>();
+    
+    public FlatFileStorageProvider(Path root) throws IOException {
+        this.root = root;
+        Files.createDirectories(root);
+    }
+    
+    @Override
+    public String getName() {
+        return "flatfile";
+    }
+    
+    @Override
+    public Map<String, byte[]> loadAll(String collection) throws IOException {
+        Path folder = root.resolve(collection);
+        Map<String, byte[]> records = new HashMap<>();
+        if (Files.notExists(folder)) {
+            return records;
+        }
+        
+        synchronized (lock(collection)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + EXTENSION)) {
+                for (Path file : files) {
+                    records.put(keyOf(file), Files.readAllBytes(file));
+                }
+            }
+        }
+        return records;
+    }
+    
+    @Override
+    public void forEach(String collection, RecordVisitor visitor) throws IOException {
+        Path folder = root.resolve(collection);
+        if (Files.notExists(folder)) {
+            return;
+        }
+        
+        // Files are replaced atomically, so each read sees a whole record without taking the lock
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + EXTENSION)) {
+            for (Path file : files) {
+                byte[] record;
+                try {
+                    record = Files.readAllBytes(file);
+                } catch (NoSuchFileException e) {
+                    // Deleted since it was listed
+                    continue;
+                }
+                visitor.accept(keyOf(file), record);
+            }
+        }
+    }
+    
+    @Override
+    public byte[] load(String collection, String key) throws IOException {
+        try {
+            return Files.readAllBytes(file(collection, key));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+    
+    @Override
+    public void write(String collection, Map<String, byte[]> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return;
+        }
+        
+        synchronized (lock(collection)) {
+            Files.createDirectories(root.resolve(collection));
+            for (Map.Entry<String, byte[]> change : changes.entrySet()) {
+                Path file = file(collection, change.getKey());
+                if (change.getValue() == null) {
+                    Files.deleteIfExists(file);
+                } else {
+                    AtomicFiles.write(file, change.getValue());
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void replaceAll(String collection, Map<String, byte[]> records) throws IOException {
+        synchronized (lock(collection)) {
+            Map<String, byte[]> changes = new HashMap<>(records);
+            // Records not in the new set are deleted
+            for (String existing : keys(collection)) {
+                changes.putIfAbsent(existing, null);
+            }
+            write(collection, changes);
+        }
+    }
+    
+    @Override
+    public void close() {
+        // Nothing kept open
+    }
+    
+    private List<String> keys(String collection) throws IOException {
+        Path folder = root.resolve(collection);
+        List<String> keys = new ArrayList<>();
+        if (Files.notExists(folder)) {
+            return keys;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + EXTENSION)) {
+            for (Path file : files) {
+                keys.add(keyOf(file));
+            }
+        }
+        return keys;
+    }
+    
+    private static String keyOf(Path file) {
+        String name = file.getFileName().toString();
+        return URLDecoder.decode(name.substring(0, name.length() - EXTENSION.length()), StandardCharsets.UTF_8);
+    }
+    
+    private Path file(String collection, String key) {
+        return root.resolve(collection).resolve(URLEncoder.encode(key, StandardCharsets.UTF_8) + EXTENSION);
+    }
+    
+    private Object lock(String collection) {
+        return locks.computeIfAbsent(collection, k -> new Object());
+    }
+}
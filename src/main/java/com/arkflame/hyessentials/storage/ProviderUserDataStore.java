@@ -0,0 +1,54 @@
+package com.arkflame.hyessentials.storage;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * ProviderUserDataStore - Player records kept in the shared StorageProvider
+ */
+public class ProviderUserDataStore implements UserDataStore {
+    private static final String COLLECTION = "users";
+    
+    private final StorageProvider provider;
+    
+    public ProviderUserDataStore(StorageProvider provider) {
+        this.provider = provider;
+    }
+    
+    @Override
+    public StoredUser load(UUID uuid) throws IOException {
+        byte[] record = provider.load(COLLECTION, uuid.toString());
+        return record != null ? UserDataCodec.decode(uuid, record) : null;
+    }
+    
+    @Override
+    public void save(StoredUser user) throws IOException {
+        provider.write(COLLECTION, Map.of(user.data().getUuid().toString(), UserDataCodec.encode(user)));
+    }
+    
+    @Override
+    public void forEach(Consumer<StoredUser> visitor) throws IOException {
+        provider.forEach(COLLECTION, (key, record) -> visitor.accept(UserDataCodec.decode(UUID.fromString(key), record)));
+    }
+    
+    /**
+     * One transaction for the whole batch on providers that support it
+     */
+    @Override
+    public void saveBatch(Collection<StoredUser> users) throws IOException {
+        Map<String, byte[]> records = new HashMap<>();
+        for (StoredUser user : users) {
+            records.put(user.data().getUuid().toString(), UserDataCodec.encode(user));
+        }
+        provider.write(COLLECTION, records);
+    }
+    
+    @Override
+    public void close() {
+        // The provider is shared and closed by the plugin
+    }
+}
@@ -0,0 +1,43 @@
+package com.arkflame.hyessentials.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Records - Helpers for the binary records managers hand to a StorageProvider
+ */
+public final class Records {
+    
+    private Records() {}
+    
+    public static byte[] encode(Encoder encoder) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        encoder.encode(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+    
+    public static DataInputStream reader(byte[] record) {
+        return new DataInputStream(new ByteArrayInputStream(record));
+    }
+    
+    public static void writeNullableUTF(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    
+    public static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    
+    @FunctionalInterface
+    public interface Encoder {
+        void encode(DataOutputStream out) throws IOException;
+    }
+}
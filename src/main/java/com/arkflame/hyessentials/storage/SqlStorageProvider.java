@@ -0,0 +1,207 @@
+package com.arkflame.hyessentials.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SqlStorageProvider - Embedded H2 database in a single file, no server needed
+ * Records live in one table keyed by (collection, key), so loads are primary key
+ * lookups and every write runs as one transaction of batched prepared statements.
+ */
+public class SqlStorageProvider implements StorageProvider {
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS records ("
+        + "collection VARCHAR(64) NOT NULL, "
+        + "record_key VARCHAR(128) NOT NULL, "
+        + "data BLOB NOT NULL, "
+        + "PRIMARY KEY (collection, record_key))";
+    private static final String SELECT_ALL = "SELECT record_key, data FROM records WHERE collection = ?";
+    // Keyset paging on the primary key, each page is a short transaction of its own
+    private static final String SELECT_PAGE = "SELECT record_key, data FROM records WHERE collection = ? AND record_key > ? "
+        + "ORDER BY record_key LIMIT ?";
+    private static final String SELECT_ONE = "SELECT data FROM records WHERE collection = ? AND record_key = ?";
+    private static final String UPSERT = "MERGE INTO records (collection, record_key, data) KEY (collection, record_key) VALUES (?, ?, ?)";
+    private static final String DELETE_ONE = "DELETE FROM records WHERE collection = ? AND record_key = ?";
+    private static final String DELETE_ALL = "DELETE FROM records WHERE collection = ?";
+    private static final int PAGE_SIZE = 256;
+    
+    private final ConnectionPool pool;
+    
+    public SqlStorageProvider(Path folder, int poolSize) throws IOException {
+        Files.createDirectories(folder);
+        // H2 appends .mv.db itself, closing is left to close() so queued writes can finish
+        String url = "jdbc:h2:file:" + folder.resolve("storage").toAbsolutePath() + ";DB_CLOSE_ON_EXIT=FALSE";
+        this.pool = new ConnectionPool(url, Math.max(1, poolSize));
+        
+        execute(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE);
+            }
+            return null;
+        });
+    }
+    
+    @Override
+    public String getName() {
+        return "h2";
+    }
+    
+    @Override
+    public Map<String, byte[]> loadAll(String collection) throws IOException {
+        return execute(connection -> {
+            Map<String, byte[]> records = new HashMap<>();
+            try (PreparedStatement select = connection.prepareStatement(SELECT_ALL)) {
+                select.setString(1, collection);
+                try (ResultSet rows = select.executeQuery()) {
+                    while (rows.next()) {
+                        records.put(rows.getString(1), rows.getBytes(2));
+                    }
+                }
+            }
+            return records;
+        });
+    }
+    
+    @Override
+    public void forEach(String collection, RecordVisitor visitor) throws IOException {
+        // Empty sorts before every key
+        String after = "";
+        while (true) {
+            String from = after;
+            Map<String, byte[]> page = execute(connection -> {
+                Map<String, byte[]> records = new LinkedHashMap<>();
+                try (PreparedStatement select = connection.prepareStatement(SELECT_PAGE)) {
+                    select.setString(1, collection);
+                    select.setString(2, from);
+                    select.setInt(3, PAGE_SIZE);
+                    try (ResultSet rows = select.executeQuery()) {
+                        while (rows.next()) {
+                            records.put(rows.getString(1), rows.getBytes(2));
+                        }
+                    }
+                }
+                return records;
+            });
+            
+            // The connection is back in the pool before the visitor runs
+            for (Map.Entry<String, byte[]> record : page.entrySet()) {
+                visitor.accept(record.getKey(), record.getValue());
+                after = record.getKey();
+            }
+            if (page.size() < PAGE_SIZE) {
+                return;
+            }
+        }
+    }
+    
+    @Override
+    public byte[] load(String collection, String key) throws IOException {
+        return execute(connection -> {
+            try (PreparedStatement select = connection.prepareStatement(SELECT_ONE)) {
+                select.setString(1, collection);
+                select.setString(2, key);
+                try (ResultSet rows = select.executeQuery()) {
+                    return rows.next() ? rows.getBytes(1) : null;
+                }
+            }
+        });
+    }
+    
+    @Override
+    public void write(String collection, Map<String, byte[]> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return;
+        }
+        execute(connection -> {
+            applyBatch(connection, collection, changes);
+            return null;
+        });
+    }
+    
+    @Override
+    public void replaceAll(String collection, Map<String, byte[]> records) throws IOException {
+        execute(connection -> {
+            try (PreparedStatement delete = connection.prepareStatement(DELETE_ALL)) {
+                delete.setString(1, collection);
+                delete.executeUpdate();
+            }
+            applyBatch(connection, collection, records);
+            return null;
+        });
+    }
+    
+    @Override
+    public void close() {
+        pool.close();
+    }
+    
+    private static void applyBatch(Connection connection, String collection, Map<String, byte[]> changes) throws SQLException {
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+             PreparedStatement delete = connection.prepareStatement(DELETE_ONE)) {
+            boolean upserts = false;
+            boolean deletes = false;
+            
+            for (Map.Entry<String, byte[]> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    delete.setString(1, collection);
+                    delete.setString(2, change.getKey());
+                    delete.addBatch();
+                    deletes = true;
+                } else {
+                    upsert.setString(1, collection);
+                    upsert.setString(2, change.getKey());
+                    upsert.setBytes(3, change.getValue());
+                    upsert.addBatch();
+                    upserts = true;
+                }
+            }
+            
+            if (upserts) {
+                upsert.executeBatch();
+            }
+            if (deletes) {
+                delete.executeBatch();
+            }
+        }
+    }
+    
+    /**
+     * Run work on a pooled connection as one transaction, rolled back on failure
+     */
+    private <T> T execute(SqlWork<T> work) throws IOException {
+        Connection connection;
+        try {
+            connection = pool.borrow();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+        
+        try {
+            T result = work.run(connection);
+            connection.commit();
+            return result;
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollback) {
+                e.addSuppressed(rollback);
+            }
+            throw new IOException(e);
+        } finally {
+            pool.release(connection);
+        }
+    }
+    
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,47 @@
+package com.arkflame.hyessentials.storage;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * StorageProvider - Where managers persist their records
+ * Data is grouped in named collections of keyed binary records, each manager
+ * owns the encoding of its own records. Implementations must be thread safe.
+ */
+public interface StorageProvider {
+    
+    String getName();
+    
+    /**
+     * Every record of a collection, empty if nothing was stored yet
+     */
+    Map<String, byte[]> loadAll(String collection) throws IOException;
+    
+    /**
+     * Visit every record of a collection a page at a time, without holding them all in memory
+     * Records written during the walk may or may not be seen.
+     */
+    void forEach(String collection, RecordVisitor visitor) throws IOException;
+    
+    /**
+     * A single record, null if absent
+     */
+    byte[] load(String collection, String key) throws IOException;
+    
+    /**
+     * Apply a set of changes as one unit, a null value deletes the record
+     */
+    void write(String collection, Map<String, byte[]> changes) throws IOException;
+    
+    /**
+     * Replace the whole collection with the given records as one unit
+     */
+    void replaceAll(String collection, Map<String, byte[]> records) throws IOException;
+    
+    void close() throws IOException;
+    
+    @FunctionalInterface
+    interface RecordVisitor {
+        void accept(String key, byte[] record) throws IOException;
+    }
+}
@@ -0,0 +1,15 @@
+package com.arkflame.hyessentials.storage;
+
+import java.util.List;
+import java.util.Map;
+
+import com.arkflame.hyessentials.data.Location;
+import com.arkflame.hyessentials.data.UserData;
+
+/**
+ * StoredUser - Everything persisted for one player, gathered from the managers that own it
+ *
+ * @param kitCooldowns absolute end time in millis per kit
+ * @param backHistory most recent location first
+ */
+public record StoredUser(UserData data, Map<String, Location> homes, Map<String, Long> kitCooldowns, List<Location> backHistory) {}
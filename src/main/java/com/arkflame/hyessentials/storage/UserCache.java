@@ -0,0 +1,191 @@
+package com.arkflame.hyessentials.storage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.arkflame.hyessentials.data.UserData;
+import com.arkflame.hyessentials.util.FrequencySketch;
+
+/**
+ * UserCache - Loaded player data, online players pinned and offline ones bounded
+ * Offline entries are kept in LRU order up to a maximum size and dropped after an idle time.
+ * When full, a new entry only replaces the least recently used one if the frequency sketch
+ * has seen it join more often (TinyLFU admission), so one-off visitors can't flush out regulars.
+ * Entries that leave the cache are handed back to the caller to write back.
+ */
+public class UserCache {
+    private final int maximumSize;
+    private final long idleMillis;
+    private final Map<UUID, UserData> pinned = new ConcurrentHashMap<>();
+    // Guarded by this, iteration order is least recently used first
+    private final LinkedHashMap<UUID, Entry> offline = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public UserCache(int maximumSize, long idleMillis) {
+        this.maximumSize = Math.max(0, maximumSize);
+        this.idleMillis = idleMillis;
+        this.sketch = new FrequencySketch(Math.max(64, maximumSize));
+    }
+
+    /**
+     * Look up a player, counted as a hit or miss
+     */
+    public UserData get(UUID uuid) {
+        UserData data = peek(uuid);
+        if (data != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return data;
+    }
+
+    /**
+     * Look up a player without touching statistics
+     */
+    public UserData peek(UUID uuid) {
+        UserData data = pinned.get(uuid);
+        if (data != null) {
+            return data;
+        }
+        synchronized (this) {
+            Entry entry = offline.get(uuid);
+            if (entry == null) {
+                return null;
+            }
+            entry.lastAccess = System.currentTimeMillis();
+            return entry.data;
+        }
+    }
+
+    /**
+     * Keep a player in memory until unpinned, used while they are online
+     */
+    public void pin(UUID uuid, UserData data) {
+        synchronized (this) {
+            sketch.increment(uuid);
+            offline.remove(uuid);
+        }
+        pinned.put(uuid, data);
+    }
+
+    /**
+     * Move a player that went offline into the bounded part, returns entries that were dropped
+     */
+    public List<UserData> unpin(UUID uuid) {
+        UserData data = pinned.remove(uuid);
+        if (data == null) {
+            return Collections.emptyList();
+        }
+        synchronized (this) {
+            return admit(uuid, data);
+        }
+    }
+
+    /**
+     * Drop offline entries not accessed within the idle time
+     */
+    public synchronized List<UserData> expireIdle() {
+        if (idleMillis <= 0 || offline.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long cutoff = System.currentTimeMillis() - idleMillis;
+        List<UserData> expired = new ArrayList<>();
+        Iterator<Entry> iterator = offline.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.lastAccess > cutoff) {
+                // Everything after this was accessed more recently
+                break;
+            }
+            iterator.remove();
+            expired.add(entry.data);
+            evictions.increment();
+        }
+        return expired;
+    }
+
+    /**
+     * Snapshot of every cached player, pinned or not
+     */
+    public List<UserData> values() {
+        List<UserData> values = new ArrayList<>(pinned.values());
+        synchronized (this) {
+            for (Entry entry : offline.values()) {
+                values.add(entry.data);
+            }
+        }
+        return values;
+    }
+
+    public Stats stats() {
+        int cached;
+        synchronized (this) {
+            cached = offline.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), rejections.sum(),
+            pinned.size(), cached, maximumSize);
+    }
+
+    // Caller holds the lock
+    private List<UserData> admit(UUID uuid, UserData data) {
+        Entry existing = offline.get(uuid);
+        if (existing != null) {
+            existing.data = data;
+            return Collections.emptyList();
+        }
+        if (offline.size() < maximumSize) {
+            offline.put(uuid, new Entry(data));
+            return Collections.emptyList();
+        }
+        if (maximumSize == 0) {
+            rejections.increment();
+            return List.of(data);
+        }
+
+        Map.Entry<UUID, Entry> eldest = offline.entrySet().iterator().next();
+        if (sketch.frequency(uuid) > sketch.frequency(eldest.getKey())) {
+            offline.remove(eldest.getKey());
+            offline.put(uuid, new Entry(data));
+            evictions.increment();
+            return List.of(eldest.getValue().data);
+        }
+
+        rejections.increment();
+        return List.of(data);
+    }
+
+    /**
+     * @param rejections offline players not admitted because the cache held more frequent ones
+     * @param pinned online players, not counted against the maximum size
+     */
+    public record Stats(long hits, long misses, long evictions, long rejections, int pinned, int cached, int maximumSize) {
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 1.0 : hits / (double) total;
+        }
+    }
+
+    private static final class Entry {
+        private UserData data;
+        private long lastAccess = System.currentTimeMillis();
+
+        Entry(UserData data) {
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.arkflame.hyessentials.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.arkflame.hyessentials.data.Location;
+import com.arkflame.hyessentials.data.UserData;
+import com.arkflame.hyessentials.util.WorldRegistry;
+
+/**
+ * UserDataCodec - Compact binary encoding of a StoredUser
+ */
+public final class UserDataCodec {
+    private static final int VERSION = 1;
+    
+    private static final int FLAG_FIRST_JOIN = 1;
+    private static final int FLAG_GOD_MODE = 1 << 1;
+    private static final int FLAG_FLYING = 1 << 2;
+    private static final int FLAG_NICKNAME = 1 << 3;
+    
+    private UserDataCodec() {}
+    
+    public static byte[] encode(StoredUser user) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        UserData data = user.data();
+        
+        out.writeByte(VERSION);
+        
+        int flags = 0;
+        if (data.isFirstJoin()) flags |= FLAG_FIRST_JOIN;
+        if (data.isGodMode()) flags |= FLAG_GOD_MODE;
+        if (data.isFlying()) flags |= FLAG_FLYING;
+        if (data.getNickname() != null) flags |= FLAG_NICKNAME;
+        out.writeByte(flags);
+        if (data.getNickname() != null) {
+            out.writeUTF(data.getNickname());
+        }
+        
+        // World names once per record, locations refer to them by index, 0 is unknown
+        List<String> worlds = new ArrayList<>();
+        Map<Integer, Integer> worldIndex = new HashMap<>();
+        collectWorlds(user.homes().values(), worlds, worldIndex);
+        collectWorlds(user.backHistory(), worlds, worldIndex);
+        writeVarInt(out, worlds.size());
+        for (String world : worlds) {
+            out.writeUTF(world);
+        }
+        
+        writeVarInt(out, user.homes().size());
+        for (Map.Entry<String, Location> home : user.homes().entrySet()) {
+            out.writeUTF(home.getKey());
+            writeLocation(out, home.getValue(), worldIndex);
+        }
+        
+        writeVarInt(out, user.kitCooldowns().size());
+        for (Map.Entry<String, Long> cooldown : user.kitCooldowns().entrySet()) {
+            out.writeUTF(cooldown.getKey());
+            out.writeLong(cooldown.getValue());
+        }
+        
+        writeVarInt(out, user.backHistory().size());
+        for (Location location : user.backHistory()) {
+            writeLocation(out, location, worldIndex);
+        }
+        
+        return bytes.toByteArray();
+    }
+    
+    public static StoredUser decode(UUID uuid, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported user data version " + version + " for " + uuid);
+        }
+        
+        UserData data = new UserData(uuid);
+        int flags = in.readUnsignedByte();
+        data.setFirstJoin((flags & FLAG_FIRST_JOIN) != 0);
+        data.setGodMode((flags & FLAG_GOD_MODE) != 0);
+        data.setFlying((flags & FLAG_FLYING) != 0);
+        if ((flags & FLAG_NICKNAME) != 0) {
+            data.setNickname(in.readUTF());
+        }
+        
+        int[] worlds = readWorlds(in);
+        
+        int homeCount = readVarInt(in);
+        Map<String, Location> homes = new HashMap<>(homeCount * 2);
+        for (int i = 0; i < homeCount; i++) {
+            String name = in.readUTF();
+            homes.put(name, readLocation(in, worlds));
+        }
+        
+        int cooldownCount = readVarInt(in);
+        Map<String, Long> cooldowns = new HashMap<>(cooldownCount * 2);
+        for (int i = 0; i < cooldownCount; i++) {
+            cooldowns.put(in.readUTF(), in.readLong());
+        }
+        
+        int backCount = readVarInt(in);
+        List<Location> back = new ArrayList<>(backCount);
+        for (int i = 0; i < backCount; i++) {
+            back.add(readLocation(in, worlds));
+        }
+        
+        return new StoredUser(data, homes, cooldowns, back);
+    }
+    
+    private static void collectWorlds(Collection<Location> locations, List<String> worlds, Map<Integer, Integer> worldIndex) {
+        for (Location location : locations) {
+            if (location.getWorld() != WorldRegistry.UNKNOWN && !worldIndex.containsKey(location.getWorld())) {
+                worlds.add(location.getWorldName());
+                worldIndex.put(location.getWorld(), worlds.size());
+            }
+        }
+    }
+    
+    private static void writeLocation(DataOutputStream out, Location location, Map<Integer, Integer> worldIndex) throws IOException {
+        writeVarInt(out, worldIndex.getOrDefault(location.getWorld(), 0));
+        location.writeCoordinates(out);
+    }
+    
+    private static Location readLocation(DataInputStream in, int[] worlds) throws IOException {
+        return Location.readCoordinates(in, worldAt(worlds, readVarInt(in)));
+    }
+    
+    private static int[] readWorlds(DataInputStream in) throws IOException {
+        int[] worlds = new int[readVarInt(in)];
+        for (int i = 0; i < worlds.length; i++) {
+            worlds[i] = WorldRegistry.get().intern(in.readUTF());
+        }
+        return worlds;
+    }
+    
+    private static int worldAt(int[] worlds, int index) throws IOException {
+        if (index == 0) {
+            return WorldRegistry.UNKNOWN;
+        }
+        if (index > worlds.length) {
+            throw new IOException("World index " + index + " out of range");
+        }
+        return worlds[index - 1];
+    }
+    
+    static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+    
+    static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("VarInt too long");
+    }
+}
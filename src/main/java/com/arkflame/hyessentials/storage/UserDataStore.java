@@ -0,0 +1,40 @@
+package com.arkflame.hyessentials.storage;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * UserDataStore - Storage engine for per-player data
+ */
+public interface UserDataStore {
+    
+    /**
+     * Load a player, null if nothing was stored yet
+     */
+    StoredUser load(UUID uuid) throws IOException;
+    
+    void save(StoredUser user) throws IOException;
+    
+    /**
+     * Visit every stored player, for indexes that must cover offline players
+     */
+    void forEach(Consumer<StoredUser> visitor) throws IOException;
+    
+    /**
+     * Save several players at once, engines override this to write them in one go
+     */
+    default void saveBatch(Collection<StoredUser> users) throws IOException {
+        for (StoredUser user : users) {
+            save(user);
+        }
+    }
+    
+    /**
+     * Force written data to disk, a no-op for engines that sync on every save
+     */
+    default void sync() throws IOException {}
+    
+    void close() throws IOException;
+}
@@ -0,0 +1,126 @@
+package com.arkflame.hyessentials.tasks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * ExpiringMap - Concurrent map whose entries are reclaimed by the ExpiryService
+ * Reads still compare the exact deadline since the wheel ticks coarsely
+ */
+public class ExpiringMap<K, V> {
+    private final ExpiryService service;
+    private final BiConsumer<K, V> onExpire;
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    
+    public ExpiringMap(ExpiryService service) {
+        this(service, null);
+    }
+    
+    public ExpiringMap(ExpiryService service, BiConsumer<K, V> onExpire) {
+        this.service = service;
+        this.onExpire = onExpire;
+    }
+    
+    /**
+     * Store a value for the given time, a ttl of zero or less never expires
+     */
+    public void put(K key, V value, long ttlMillis) {
+        Entry<V> entry = new Entry<>(value, ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE);
+        
+        Entry<V> previous = entries.put(key, entry);
+        if (previous != null) {
+            previous.cancel();
+        }
+        
+        if (ttlMillis > 0) {
+            entry.timeout = service.schedule(ttlMillis, TimeUnit.MILLISECONDS, () -> expire(key, entry));
+        }
+    }
+    
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        return entry != null && System.currentTimeMillis() < entry.deadline ? entry.value : null;
+    }
+    
+    public boolean containsKey(K key) {
+        return get(key) != null;
+    }
+    
+    /**
+     * Milliseconds left before the entry expires, 0 if absent
+     */
+    public long getRemaining(K key) {
+        Entry<V> entry = entries.get(key);
+        return entry != null ? Math.max(0, entry.deadline - System.currentTimeMillis()) : 0;
+    }
+    
+    public V remove(K key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.cancel();
+        return entry.value;
+    }
+    
+    /**
+     * Remove only if the key still maps to the given value
+     */
+    public boolean remove(K key, V value) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null || !entry.value.equals(value) || !entries.remove(key, entry)) {
+            return false;
+        }
+        entry.cancel();
+        return true;
+    }
+    
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+    
+    /**
+     * Snapshot of live entries and their absolute deadlines, used for persistence
+     */
+    public Map<K, Long> getDeadlines() {
+        if (entries.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        long now = System.currentTimeMillis();
+        Map<K, Long> deadlines = new HashMap<>();
+        entries.forEach((key, entry) -> {
+            if (entry.deadline > now) {
+                deadlines.put(key, entry.deadline);
+            }
+        });
+        return deadlines;
+    }
+    
+    private void expire(K key, Entry<V> entry) {
+        if (entries.remove(key, entry) && onExpire != null) {
+            onExpire.accept(key, entry.value);
+        }
+    }
+    
+    private static final class Entry<V> {
+        private final V value;
+        private final long deadline;
+        private volatile ExpiryService.Timeout timeout;
+        
+        private Entry(V value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+        
+        private void cancel() {
+            ExpiryService.Timeout current = timeout;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.arkflame.hyessentials.tasks;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.arkflame.hyessentials.HyEssentials;
+
+/**
+ * ExpiryService - Hierarchical timing wheel for expiring entries
+ * Mutes, cooldowns and teleport requests share one ticking thread,
+ * scheduling and cancelling are O(1)
+ */
+public class ExpiryService {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    // Furthest deadline a single placement can reach, later ones are parked at the
+    // edge of the wheel and placed again once it comes round
+    static final long MAX_SPAN = (1L << (WHEEL_BITS * LEVELS)) - 1;
+
+    private final Consumer<Throwable> errorHandler;
+    private final long tickNanos;
+    private final Bucket[][] wheels = new Bucket[LEVELS][WHEEL_SIZE];
+    private final ScheduledExecutorService ticker;
+    private final long startNanos;
+    private long currentTick;
+    private int size;
+
+    public ExpiryService(HyEssentials plugin, long tickMillis) {
+        this(tickMillis, t -> plugin.getLogger().atWarning().withCause(t).log("Expiry callback failed"), true);
+    }
+
+    /**
+     * A wheel without a ticker thread, ticks are driven through advanceTo
+     */
+    ExpiryService(long tickMillis, Consumer<Throwable> errorHandler) {
+        this(tickMillis, errorHandler, false);
+    }
+
+    private ExpiryService(long tickMillis, Consumer<Throwable> errorHandler, boolean ticking) {
+        this.errorHandler = errorHandler;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < WHEEL_SIZE; slot++) {
+                wheels[level][slot] = new Bucket();
+            }
+        }
+
+        this.startNanos = System.nanoTime();
+        if (ticking) {
+            this.ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "HyEssentials-Expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.ticker = null;
+        }
+    }
+
+    /**
+     * Run a callback once the delay has passed, on the expiry thread
+     */
+    public Timeout schedule(long delay, TimeUnit unit, Runnable callback) {
+        long ticks = Math.max(1, (unit.toNanos(delay) + tickNanos - 1) / tickNanos);
+        synchronized (this) {
+            Timeout timeout = new Timeout(this, currentTick + ticks, callback);
+            place(timeout);
+            size++;
+            return timeout;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    synchronized long getCurrentTick() {
+        return currentTick;
+    }
+
+    private void advance() {
+        advanceTo((System.nanoTime() - startNanos) / tickNanos);
+    }
+
+    /**
+     * Step the wheel one tick at a time up to the target, running what expires on the calling thread
+     */
+    void advanceTo(long target) {
+        while (true) {
+            Timeout expired = null;
+            synchronized (this) {
+                if (currentTick >= target) {
+                    return;
+                }
+                currentTick++;
+                cascade();
+                Timeout entry = wheels[0][(int) (currentTick & WHEEL_MASK)].drain();
+                while (entry != null) {
+                    Timeout next = entry.next;
+                    if (entry.deadline > currentTick) {
+                        // Parked at the edge of the wheel, not due yet
+                        entry.next = null;
+                        place(entry);
+                    } else {
+                        entry.next = expired;
+                        expired = entry;
+                        size--;
+                    }
+                    entry = next;
+                }
+            }
+
+            // Callbacks run outside the lock so they can schedule or cancel freely
+            while (expired != null) {
+                Timeout next = expired.next;
+                expired.next = null;
+                try {
+                    expired.callback.run();
+                } catch (Throwable t) {
+                    errorHandler.accept(t);
+                }
+                expired = next;
+            }
+        }
+    }
+
+    /**
+     * Move entries down one level each time a lower wheel wraps around
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            if (((currentTick >> (WHEEL_BITS * (level - 1))) & WHEEL_MASK) != 0) {
+                return;
+            }
+            Timeout entry = wheels[level][(int) ((currentTick >> (WHEEL_BITS * level)) & WHEEL_MASK)].drain();
+            while (entry != null) {
+                Timeout next = entry.next;
+                entry.next = null;
+                place(entry);
+                entry = next;
+            }
+        }
+    }
+
+    // Caller holds the lock, an entry due now goes to the level 0 slot about to be drained
+    private void place(Timeout timeout) {
+        long deadline = Math.max(timeout.deadline, currentTick);
+        long remaining = deadline - currentTick;
+        if (remaining > MAX_SPAN) {
+            deadline = currentTick + MAX_SPAN;
+            remaining = MAX_SPAN;
+        }
+
+        int level = 0;
+        while (level < LEVELS - 1 && remaining >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+        wheels[level][(int) ((deadline >> (WHEEL_BITS * level)) & WHEEL_MASK)].add(timeout);
+    }
+
+    private synchronized boolean cancel(Timeout timeout) {
+        if (timeout.bucket == null) {
+            return false;
+        }
+        timeout.bucket.remove(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Handle to a scheduled expiry
+     */
+    public static final class Timeout {
+        private final ExpiryService service;
+        private final long deadline;
+        private final Runnable callback;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(ExpiryService service, long deadline, Runnable callback) {
+            this.service = service;
+            this.deadline = deadline;
+            this.callback = callback;
+        }
+
+        /**
+         * Cancel the expiry, returns false if it already fired or was cancelled
+         */
+        public boolean cancel() {
+            return service.cancel(this);
+        }
+    }
+
+    /**
+     * Intrusive doubly linked list so removal needs no search
+     */
+    private static final class Bucket {
+        private Timeout head;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            head = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.bucket = null;
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        /**
+         * Detach every entry, returned as a singly linked chain through next
+         */
+        Timeout drain() {
+            Timeout chain = head;
+            head = null;
+            for (Timeout entry = chain; entry != null; entry = entry.next) {
+                entry.bucket = null;
+                entry.prev = null;
+            }
+            return chain;
+        }
+    }
+}
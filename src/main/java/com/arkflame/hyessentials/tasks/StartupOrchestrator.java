@@ -0,0 +1,219 @@
+package com.arkflame.hyessentials.tasks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import com.arkflame.hyessentials.HyEssentials;
+
+/**
+ * StartupOrchestrator - Starts each component as soon as the ones it depends on are done
+ * Independent loads run in parallel, the plugin is ready once every component completed
+ * and each component's wait and load time is logged.
+ */
+public class StartupOrchestrator {
+    private final HyEssentials plugin;
+    private final Map<String, Component> components = new LinkedHashMap<>();
+    // Synchronous phases run on the setup thread, only kept for the breakdown
+    private final List<Component> phases = new ArrayList<>();
+    private final long startNanos = System.nanoTime();
+    private CompletableFuture<Void> all;
+
+    public StartupOrchestrator(HyEssentials plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Register an asynchronous load, started once all dependencies completed
+     */
+    public synchronized StartupOrchestrator register(String name, Supplier<CompletableFuture<?>> loader, String... dependsOn) {
+        if (all != null) {
+            throw new IllegalStateException("Startup already began, can't register " + name);
+        }
+        if (components.putIfAbsent(name, new Component(name, loader, Arrays.asList(dependsOn))) != null) {
+            throw new IllegalArgumentException("Duplicate startup component " + name);
+        }
+        return this;
+    }
+
+    /**
+     * Run work on the calling thread and record it in the timing breakdown
+     */
+    public void runTimed(String name, Runnable work) {
+        Component component = new Component(name, null, List.of());
+        component.queuedNanos = System.nanoTime();
+        component.startNanos = component.queuedNanos;
+        try {
+            work.run();
+        } finally {
+            component.endNanos = System.nanoTime();
+            synchronized (phases) {
+                phases.add(component);
+            }
+        }
+    }
+
+    /**
+     * Start every registered component, dependencies first
+     */
+    public synchronized CompletableFuture<Void> start() {
+        if (all != null) {
+            return all;
+        }
+
+        List<Component> ordered = order();
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        for (Component component : ordered) {
+            component.queuedNanos = System.nanoTime();
+            CompletableFuture<?>[] dependencies = component.dependsOn.stream()
+                .map(futures::get)
+                .toArray(CompletableFuture[]::new);
+
+            // A failed dependency is logged by itself, dependents still start with what is there
+            CompletableFuture<Void> future = CompletableFuture.allOf(dependencies)
+                .handle((ignored, error) -> null)
+                .thenCompose(ignored -> component.run());
+            futures.put(component.name, future);
+        }
+
+        all = CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new));
+        return all;
+    }
+
+    /**
+     * Block until every component completed, false if the timeout passed first
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) {
+        CompletableFuture<Void> future = start();
+        try {
+            future.get(timeout, unit);
+        } catch (TimeoutException e) {
+            List<String> pending = new ArrayList<>();
+            for (Component component : components.values()) {
+                if (component.endNanos == 0) {
+                    pending.add(component.name);
+                }
+            }
+            plugin.getLogger().atWarning().log("Startup still waiting on " + pending + " after " + unit.toMillis(timeout) + "ms");
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            // Failures are reported per component
+        }
+        return true;
+    }
+
+    /**
+     * Whether a component finished with an error, dependents use it to skip work on partial data
+     */
+    public boolean hasFailed(String name) {
+        Component component = components.get(name);
+        return component != null && component.failed;
+    }
+
+    /**
+     * Log when each component started and how long it took, slowest first
+     */
+    public void logTimings() {
+        List<Component> done = new ArrayList<>();
+        synchronized (phases) {
+            done.addAll(phases);
+        }
+        for (Component component : components.values()) {
+            if (component.endNanos != 0) {
+                done.add(component);
+            }
+        }
+        done.sort((a, b) -> Long.compare(b.endNanos - b.startNanos, a.endNanos - a.startNanos));
+
+        plugin.getLogger().atInfo().log("Startup breakdown (start offset / waited on dependencies / took):");
+        for (Component component : done) {
+            plugin.getLogger().atInfo().log(String.format("  %-14s +%dms / %dms / %dms%s", component.name,
+                millis(component.startNanos - startNanos),
+                millis(component.startNanos - component.queuedNanos),
+                millis(component.endNanos - component.startNanos),
+                component.failed ? " (failed)" : ""));
+        }
+    }
+
+    /**
+     * Topological order of registered components, rejects unknown dependencies and cycles
+     */
+    private List<Component> order() {
+        List<Component> ordered = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        Set<String> path = new HashSet<>();
+        for (Component component : components.values()) {
+            visit(component, visited, path, ordered);
+        }
+        return ordered;
+    }
+
+    private void visit(Component component, Set<String> visited, Set<String> path, List<Component> ordered) {
+        if (visited.contains(component.name)) {
+            return;
+        }
+        if (!path.add(component.name)) {
+            throw new IllegalStateException("Startup dependency cycle through " + component.name);
+        }
+        for (String dependency : component.dependsOn) {
+            Component required = components.get(dependency);
+            if (required == null) {
+                throw new IllegalStateException(component.name + " depends on unknown component " + dependency);
+            }
+            visit(required, visited, path, ordered);
+        }
+        path.remove(component.name);
+        visited.add(component.name);
+        ordered.add(component);
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private final class Component {
+        private final String name;
+        private final Supplier<CompletableFuture<?>> loader;
+        private final List<String> dependsOn;
+        private volatile long queuedNanos;
+        private volatile long startNanos;
+        private volatile long endNanos;
+        private volatile boolean failed;
+
+        Component(String name, Supplier<CompletableFuture<?>> loader, List<String> dependsOn) {
+            this.name = name;
+            this.loader = loader;
+            this.dependsOn = dependsOn;
+        }
+
+        CompletableFuture<Void> run() {
+            startNanos = System.nanoTime();
+            CompletableFuture<?> future;
+            try {
+                future = loader.get();
+            } catch (Throwable t) {
+                future = CompletableFuture.failedFuture(t);
+            }
+            return future.handle((ignored, error) -> {
+                endNanos = System.nanoTime();
+                if (error != null) {
+                    failed = true;
+                    plugin.getLogger().atWarning().withCause(error).log("Failed to load " + name);
+                }
+                return null;
+            });
+        }
+    }
+}
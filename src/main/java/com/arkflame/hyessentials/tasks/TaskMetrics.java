@@ -0,0 +1,124 @@
+package com.arkflame.hyessentials.tasks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.arkflame.hyessentials.HyEssentials;
+
+/**
+ * TaskMetrics - Queue wait and run time of every task submitted through the TaskRunner
+ * Grouped by the caller label so lag can be traced back to a feature
+ */
+public class TaskMetrics {
+    private final HyEssentials plugin;
+    private final Map<String, LabelStats> stats = new ConcurrentHashMap<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(50);
+    
+    public TaskMetrics(HyEssentials plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Log tasks that run longer than this
+     */
+    public void setSlowThreshold(long millis) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+    
+    /**
+     * Wrap a task so it is timed from its expected start, use System.nanoTime() for immediate tasks
+     */
+    public Runnable wrap(String label, Runnable task, long expectedStartNanos) {
+        LabelStats labelStats = stats.computeIfAbsent(label, LabelStats::new);
+        queued.incrementAndGet();
+        return () -> {
+            queued.decrementAndGet();
+            execute(labelStats, task, expectedStartNanos);
+        };
+    }
+    
+    /**
+     * Wrap a repeating task, each run is timed from the slot it was scheduled for
+     */
+    public Runnable wrapRepeating(String label, Runnable task, long firstStartNanos, long periodNanos) {
+        LabelStats labelStats = stats.computeIfAbsent(label, LabelStats::new);
+        return new Runnable() {
+            private long expected = firstStartNanos;
+            
+            @Override
+            public void run() {
+                long start = expected;
+                expected += periodNanos;
+                execute(labelStats, task, start);
+            }
+        };
+    }
+    
+    private void execute(LabelStats labelStats, Runnable task, long expectedStartNanos) {
+        long start = System.nanoTime();
+        labelStats.wait.record(start - expectedStartNanos);
+        try {
+            task.run();
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            labelStats.run.record(elapsed);
+            if (elapsed > slowThresholdNanos) {
+                plugin.getLogger().atWarning().log("Slow task '" + labelStats.label + "' took "
+                    + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+            }
+        }
+    }
+    
+    /**
+     * Tasks due but not started yet, delayed and repeating tasks count only once they are due
+     */
+    public int getQueueDepth() {
+        return queued.get();
+    }
+    
+    /**
+     * Per label statistics, busiest labels first
+     */
+    public List<Snapshot> snapshot() {
+        List<Snapshot> snapshots = new ArrayList<>();
+        for (LabelStats labelStats : stats.values()) {
+            snapshots.add(new Snapshot(
+                labelStats.label,
+                labelStats.run.getCount(),
+                labelStats.wait.getPercentile(50),
+                labelStats.wait.getPercentile(99),
+                labelStats.run.getPercentile(50),
+                labelStats.run.getPercentile(99),
+                labelStats.run.getMax()
+            ));
+        }
+        snapshots.sort(Comparator.comparingLong((Snapshot s) -> s.count() * s.runP50Nanos()).reversed());
+        return snapshots;
+    }
+    
+    public void reset() {
+        for (LabelStats labelStats : stats.values()) {
+            labelStats.wait.reset();
+            labelStats.run.reset();
+        }
+    }
+    
+    public record Snapshot(String label, long count, long waitP50Nanos, long waitP99Nanos,
+                           long runP50Nanos, long runP99Nanos, long runMaxNanos) {}
+    
+    private static final class LabelStats {
+        private final String label;
+        private final LatencyHistogram wait = new LatencyHistogram();
+        private final LatencyHistogram run = new LatencyHistogram();
+        
+        private LabelStats(String label) {
+            this.label = label;
+        }
+    }
+}
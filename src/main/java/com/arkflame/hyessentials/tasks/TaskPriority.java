@@ -0,0 +1,12 @@
+package com.arkflame.hyessentials.tasks;
+
+/**
+ * TaskPriority - Drain order of the tick queue, higher priorities run first
+ */
+public enum TaskPriority {
+    // Gameplay critical work such as teleports
+    HIGH,
+    NORMAL,
+    // Cosmetic work such as broadcasts and MOTDs
+    LOW
+}
@@ -4,7 +4,11 @@ package com.arkflame.hyessentials.tasks;
 import com.arkflame.hyessentials.HyEssentials;
 import com.hypixel.hytale.server.core.HytaleServer;
 
+import java.util.Map;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 /**
  * TaskRunner - Handles all asynchronous operations
@@ -12,14 +16,28 @@ import java.util.concurrent.*;
  */
 public class TaskRunner {
     
+    private static final int DEFAULT_IO_CONCURRENCY = 16;
+    private static final String DEFAULT_LABEL = "unlabelled";
+    private static final long DEFAULT_TICK_MILLIS = 50;
+    private static final long DEFAULT_TICK_BUDGET_MICROS = 5000;
+    
     @SuppressWarnings("unused")
 	private final HyEssentials plugin;
     private final ScheduledExecutorService asyncExecutor;
     private final ExecutorService syncExecutor;
+    private final ExecutorService ioExecutor;
+    private volatile Semaphore ioPermits = new Semaphore(DEFAULT_IO_CONCURRENCY);
+    private final TaskMetrics metrics;
+    private final TickQueue tickQueue;
+    private ScheduledFuture<?> tickTask;
+    private final Map<Object, Coalesced> coalesced = new ConcurrentHashMap<>();
+    private final Map<Object, CompletableFuture<Void>> runningCoalesced = new ConcurrentHashMap<>();
     private boolean useHytaleScheduler;
     
     public TaskRunner(HyEssentials plugin) {
         this.plugin = plugin;
+        this.metrics = new TaskMetrics(plugin);
+        this.tickQueue = new TickQueue(plugin);
         
         // Try to use Hytale's built-in scheduler
         try {
@@ -57,16 +75,35 @@ public class TaskRunner {
             this.syncExecutor = null;
             plugin.getLogger().atInfo().log("Using Hytale's native scheduler");
         }
+        
+        // Blocking file I/O gets its own virtual threads so it never holds scheduler threads
+        this.ioExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("HyEssentials-IO-", 0).factory()
+        );
+        
+        configureTickQueue(DEFAULT_TICK_MILLIS, DEFAULT_TICK_BUDGET_MICROS);
+    }
+    
+    /**
+     * Limit how many I/O tasks may run at once, e.g. during a join storm
+     */
+    public void setIoConcurrency(int permits) {
+        this.ioPermits = new Semaphore(Math.max(1, permits));
     }
     
     /**
      * Run a task asynchronously
      */
     public CompletableFuture<Void> runAsync(Runnable task) {
+        return runAsync(DEFAULT_LABEL, task);
+    }
+    
+    public CompletableFuture<Void> runAsync(String label, Runnable task) {
+        Runnable timed = metrics.wrap(label, task, System.nanoTime());
         if (useHytaleScheduler) {
-            return CompletableFuture.runAsync(task, HytaleServer.SCHEDULED_EXECUTOR);
+            return CompletableFuture.runAsync(timed, HytaleServer.SCHEDULED_EXECUTOR);
         } else {
-            return CompletableFuture.runAsync(task, asyncExecutor);
+            return CompletableFuture.runAsync(timed, asyncExecutor);
         }
     }
     
@@ -74,73 +111,254 @@ public class TaskRunner {
      * Run a task synchronously (on main thread)
      */
     public void runSync(Runnable task) {
-        if (useHytaleScheduler) {
-        	HytaleServer.SCHEDULED_EXECUTOR.execute(task);
-        } else {
-            syncExecutor.execute(task);
-        }
+        runSync(DEFAULT_LABEL, task);
+    }
+    
+    public void runSync(String label, Runnable task) {
+        runSync(label, TaskPriority.NORMAL, task);
     }
     
     /**
-     * Run a task after a delay
+     * Queue a task for the next ticks, it runs once the tick budget allows
      */
-    public void runDelayed(Runnable task, long delay, TimeUnit unit) {
-        if (useHytaleScheduler) {
-        	HytaleServer.SCHEDULED_EXECUTOR.schedule(task, delay, unit);
-        } else {
-            asyncExecutor.schedule(() -> runSync(task), delay, unit);
-        }
+    public void runSync(String label, TaskPriority priority, Runnable task) {
+        tickQueue.submit(priority, metrics.wrap(label, task, System.nanoTime()));
+    }
+    
+    /**
+     * Run a task after a delay, it only counts as queued once the delay has passed
+     * so cancelling it before then leaves nothing behind in the metrics
+     */
+    public ScheduledFuture<?> runDelayed(Runnable task, long delay, TimeUnit unit) {
+        return runDelayed(DEFAULT_LABEL, task, delay, unit);
+    }
+    
+    public ScheduledFuture<?> runDelayed(String label, Runnable task, long delay, TimeUnit unit) {
+        return runDelayed(label, TaskPriority.NORMAL, task, delay, unit);
+    }
+    
+    public ScheduledFuture<?> runDelayed(String label, TaskPriority priority, Runnable task, long delay, TimeUnit unit) {
+        long expectedStart = System.nanoTime() + unit.toNanos(delay);
+        return scheduler().schedule(() -> tickQueue.submit(priority, metrics.wrap(label, task, expectedStart)), delay, unit);
     }
     
     /**
      * Run a task asynchronously after a delay
      */
-    public void runAsyncDelayed(Runnable task, long delay, TimeUnit unit) {
-        if (useHytaleScheduler) {
-        	HytaleServer.SCHEDULED_EXECUTOR.schedule(task, delay, unit);
-        } else {
-            asyncExecutor.schedule(task, delay, unit);
-        }
+    public ScheduledFuture<?> runAsyncDelayed(Runnable task, long delay, TimeUnit unit) {
+        return runAsyncDelayed(DEFAULT_LABEL, task, delay, unit);
+    }
+    
+    public ScheduledFuture<?> runAsyncDelayed(String label, Runnable task, long delay, TimeUnit unit) {
+        long expectedStart = System.nanoTime() + unit.toNanos(delay);
+        return scheduler().schedule(() -> metrics.wrap(label, task, expectedStart).run(), delay, unit);
     }
     
     /**
      * Run a task repeatedly
      */
     public ScheduledFuture<?> runRepeating(Runnable task, long initialDelay, long period, TimeUnit unit) {
-        if (useHytaleScheduler) {
-            return HytaleServer.SCHEDULED_EXECUTOR.scheduleAtFixedRate(task, initialDelay, period, unit);
-        } else {
-            return asyncExecutor.scheduleAtFixedRate(() -> runSync(task), initialDelay, period, unit);
-        }
+        return runRepeating(DEFAULT_LABEL, task, initialDelay, period, unit);
+    }
+    
+    public ScheduledFuture<?> runRepeating(String label, Runnable task, long initialDelay, long period, TimeUnit unit) {
+        Runnable timed = metrics.wrapRepeating(label, task,
+            System.nanoTime() + unit.toNanos(initialDelay), unit.toNanos(period));
+        
+        // A period that is still waiting in the queue isn't queued a second time,
+        // and one still waiting when the task is cancelled is dropped
+        AtomicBoolean queued = new AtomicBoolean();
+        AtomicReference<ScheduledFuture<?>> handle = new AtomicReference<>();
+        Runnable once = () -> {
+            queued.set(false);
+            ScheduledFuture<?> future = handle.get();
+            if (future == null || !future.isCancelled()) {
+                timed.run();
+            }
+        };
+        ScheduledFuture<?> future = scheduler().scheduleAtFixedRate(() -> {
+            if (queued.compareAndSet(false, true)) {
+                tickQueue.submit(TaskPriority.NORMAL, once);
+            }
+        }, initialDelay, period, unit);
+        handle.set(future);
+        return future;
     }
     
     /**
      * Run a callable asynchronously and return result
      */
     public <T> CompletableFuture<T> supplyAsync(Callable<T> task) {
+        return supplyAsync(DEFAULT_LABEL, task);
+    }
+    
+    public <T> CompletableFuture<T> supplyAsync(String label, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        runAsync(label, () -> complete(future, task));
+        return future;
+    }
+    
+    /**
+     * Run blocking I/O on a virtual thread
+     */
+    public CompletableFuture<Void> runIo(Runnable task) {
+        return runIo(DEFAULT_LABEL, task);
+    }
+    
+    public CompletableFuture<Void> runIo(String label, Runnable task) {
+        Runnable timed = metrics.wrap(label, task, System.nanoTime());
+        return CompletableFuture.runAsync(() -> {
+            Semaphore permits = acquireIo();
+            try {
+                timed.run();
+            } finally {
+                permits.release();
+            }
+        }, ioExecutor);
+    }
+    
+    /**
+     * Run blocking I/O on a virtual thread and return result
+     */
+    public <T> CompletableFuture<T> supplyIo(Callable<T> task) {
+        return supplyIo(DEFAULT_LABEL, task);
+    }
+    
+    public <T> CompletableFuture<T> supplyIo(String label, Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        runIo(label, () -> complete(future, task));
+        return future;
+    }
+    
+    /**
+     * Run a task asynchronously, merged with a still queued task for the same key
+     */
+    public CompletableFuture<Void> runAsyncCoalesced(Object key, Runnable task) {
+        return runAsyncCoalesced(DEFAULT_LABEL, key, task);
+    }
+    
+    public CompletableFuture<Void> runAsyncCoalesced(String label, Object key, Runnable task) {
+        return coalesce(key, task, runner -> runAsync(label, runner));
+    }
+    
+    /**
+     * Run blocking I/O, merged with a still queued task for the same key
+     */
+    public CompletableFuture<Void> runIoCoalesced(String label, Object key, Runnable task) {
+        return coalesce(key, task, runner -> runIo(label, runner));
+    }
+    
+    /**
+     * While a task for the key is queued, newer submissions replace it and share its future.
+     * Runs for the same key never overlap, the next one starts after the previous finished.
+     */
+    private CompletableFuture<Void> coalesce(Object key, Runnable task, Function<Runnable, CompletableFuture<Void>> submitter) {
+        Coalesced entry = coalesced.compute(key, (k, queued) -> {
+            if (queued != null) {
+                queued.task = task;
+                return queued;
+            }
+            return new Coalesced(task);
+        });
+        
+        if (!entry.submitted.compareAndSet(false, true)) {
+            return entry.future;
+        }
+        
+        Runnable runner = () -> {
+            // From here on a new submission queues a fresh run, the task is read after
+            // leaving the map so the last replacement always wins
+            coalesced.remove(key, entry);
+            entry.task.run();
+        };
+        
+        CompletableFuture<Void> previous = runningCoalesced.put(key, entry.future);
+        CompletableFuture<Void> after = previous != null
+            ? previous.handle((result, error) -> null)
+            : CompletableFuture.completedFuture(null);
+        
+        after.thenCompose(ignored -> submitter.apply(runner)).whenComplete((result, error) -> {
+            runningCoalesced.remove(key, entry.future);
+            if (error != null) {
+                entry.future.completeExceptionally(error);
+            } else {
+                entry.future.complete(null);
+            }
+        });
+        return entry.future;
+    }
+    
+    private static <T> void complete(CompletableFuture<T> future, Callable<T> task) {
+        try {
+            future.complete(task.call());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+    
+    /**
+     * Drain the sync queue every tick, spending at most the given budget per tick
+     */
+    public synchronized void configureTickQueue(long tickMillis, long budgetMicros) {
+        tickQueue.setBudget(budgetMicros);
+        if (tickTask != null) {
+            tickTask.cancel(false);
+        }
+        
         if (useHytaleScheduler) {
-            return CompletableFuture.supplyAsync(() -> {
-                try {
-                    return task.call();
-                } catch (Exception e) {
-                    throw new CompletionException(e);
-                }
-            }, HytaleServer.SCHEDULED_EXECUTOR);
+            tickTask = HytaleServer.SCHEDULED_EXECUTOR.scheduleAtFixedRate(tickQueue::drain, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
         } else {
-            return CompletableFuture.supplyAsync(() -> {
-                try {
-                    return task.call();
-                } catch (Exception e) {
-                    throw new CompletionException(e);
-                }
-            }, asyncExecutor);
+            tickTask = asyncExecutor.scheduleAtFixedRate(() -> syncExecutor.execute(tickQueue::drain), tickMillis, tickMillis, TimeUnit.MILLISECONDS);
         }
     }
     
+    public TickQueue getTickQueue() {
+        return tickQueue;
+    }
+    
+    private ScheduledExecutorService scheduler() {
+        return useHytaleScheduler ? HytaleServer.SCHEDULED_EXECUTOR : asyncExecutor;
+    }
+    
     /**
-     * Shutdown the task runner
+     * Queue wait and run time histograms of every submitted task
+     */
+    public TaskMetrics getMetrics() {
+        return metrics;
+    }
+    
+    private Semaphore acquireIo() {
+        // Release on the same semaphore even if the limit is changed meanwhile
+        Semaphore permits = ioPermits;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+        return permits;
+    }
+    
+    /**
+     * Shutdown the task runner, sync tasks still queued run on the calling thread before it returns
      */
     public void shutdown() {
+        synchronized (this) {
+            if (tickTask != null) {
+                tickTask.cancel(false);
+            }
+        }
+        
+        ioExecutor.shutdown();
+        try {
+            if (!ioExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                ioExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            ioExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        
         if (!useHytaleScheduler) {
             asyncExecutor.shutdown();
             syncExecutor.shutdown();
@@ -158,5 +376,18 @@ public class TaskRunner {
                 Thread.currentThread().interrupt();
             }
         }
+        
+        // Nothing drains the queue anymore, run what is left once without a budget
+        tickQueue.drainAll();
+    }
+    
+    private static final class Coalesced {
+        private volatile Runnable task;
+        private final AtomicBoolean submitted = new AtomicBoolean();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        
+        private Coalesced(Runnable task) {
+            this.task = task;
+        }
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+package com.arkflame.hyessentials.tasks;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.arkflame.hyessentials.HyEssentials;
+
+/**
+ * TickQueue - Sync work drained once per tick within a time budget
+ * A tick is a fixed-rate timer run by TaskRunner, not the server's main thread.
+ * Whatever doesn't fit is carried over to the next tick so bursts are spread out.
+ */
+public class TickQueue {
+    private static final TaskPriority[] PRIORITIES = TaskPriority.values();
+    
+    private final HyEssentials plugin;
+    private final Queue<Runnable>[] queues;
+    private final AtomicInteger[] sizes;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile long budgetNanos = TimeUnit.MILLISECONDS.toNanos(5);
+    private volatile int lastCarryOver;
+    private volatile int peakCarryOver;
+    
+    @SuppressWarnings("unchecked")
+    public TickQueue(HyEssentials plugin) {
+        this.plugin = plugin;
+        this.queues = new Queue[PRIORITIES.length];
+        this.sizes = new AtomicInteger[PRIORITIES.length];
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues[i] = new ConcurrentLinkedQueue<>();
+            sizes[i] = new AtomicInteger();
+        }
+    }
+    
+    /**
+     * Time the queue may spend per tick
+     */
+    public void setBudget(long micros) {
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(1, micros));
+    }
+    
+    public void submit(TaskPriority priority, Runnable task) {
+        queues[priority.ordinal()].add(task);
+        sizes[priority.ordinal()].incrementAndGet();
+    }
+    
+    /**
+     * Run queued tasks until the budget is used
+     * Called by a fixed-rate timer, on HytaleServer.SCHEDULED_EXECUTOR or TaskRunner's sync executor,
+     * and never runs concurrently with itself
+     */
+    public void drain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        
+        try {
+            long deadline = System.nanoTime() + budgetNanos;
+            
+            // One task per non-empty priority always runs so low priority work can't starve
+            for (int i = 0; i < PRIORITIES.length; i++) {
+                runNext(i);
+            }
+            
+            for (int i = 0; i < PRIORITIES.length; i++) {
+                while (System.nanoTime() < deadline && runNext(i)) {
+                    // Keep draining this priority
+                }
+            }
+            
+            int carryOver = getBacklog();
+            lastCarryOver = carryOver;
+            if (carryOver > peakCarryOver) {
+                peakCarryOver = carryOver;
+            }
+        } finally {
+            draining.set(false);
+        }
+    }
+    
+    /**
+     * Run every queued task with no budget, including tasks they queue, used once at shutdown
+     */
+    public void drainAll() {
+        // A timer drain may still be running on another thread
+        while (!draining.compareAndSet(false, true)) {
+            Thread.onSpinWait();
+        }
+        
+        try {
+            boolean ran;
+            do {
+                ran = false;
+                for (int i = 0; i < PRIORITIES.length; i++) {
+                    while (runNext(i)) {
+                        ran = true;
+                    }
+                }
+            } while (ran);
+            lastCarryOver = 0;
+        } finally {
+            draining.set(false);
+        }
+    }
+    
+    private boolean runNext(int priority) {
+        Runnable task = queues[priority].poll();
+        if (task == null) {
+            return false;
+        }
+        sizes[priority].decrementAndGet();
+        
+        try {
+            task.run();
+        } catch (Throwable t) {
+            plugin.getLogger().atWarning().withCause(t).log("Sync task failed");
+        }
+        return true;
+    }
+    
+    /**
+     * Tasks currently waiting for a tick
+     */
+    public int getBacklog() {
+        int backlog = 0;
+        for (AtomicInteger size : sizes) {
+            backlog += size.get();
+        }
+        return backlog;
+    }
+    
+    public int getBacklog(TaskPriority priority) {
+        return sizes[priority.ordinal()].get();
+    }
+    
+    /**
+     * Tasks carried over after the last tick
+     */
+    public int getLastCarryOver() {
+        return lastCarryOver;
+    }
+    
+    public int getPeakCarryOver() {
+        return peakCarryOver;
+    }
+    
+    public void resetPeak() {
+        peakCarryOver = lastCarryOver;
+    }
+}
@@ -0,0 +1,88 @@
+package com.arkflame.hyessentials.tasks;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.arkflame.hyessentials.HyEssentials;
+
+/**
+ * WriteBehindFlusher - Periodically persists data that was marked dirty
+ * Each flush writes one batch per registered target on the I/O executor. The flush
+ * interval bounds what a process crash can lose, the max loss window bounds how long
+ * written data may sit in the OS cache before it is synced to disk.
+ */
+public class WriteBehindFlusher {
+    private final HyEssentials plugin;
+    private final Map<String, Target> targets = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> task;
+    private long maxLossMillis;
+    private volatile long lastSync = System.currentTimeMillis();
+
+    public WriteBehindFlusher(HyEssentials plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Register something that knows how to write its own dirty records
+     */
+    public void register(String name, Target target) {
+        targets.put(name, target);
+    }
+
+    /**
+     * Stop writing a target, also skipped by the final flush
+     */
+    public void unregister(String name) {
+        targets.remove(name);
+    }
+
+    public synchronized void start(long flushIntervalMillis, long maxLossMillis) {
+        stop();
+        // Flushing less often than the loss window would make the window meaningless
+        long interval = Math.max(100, Math.min(flushIntervalMillis, maxLossMillis));
+        this.maxLossMillis = maxLossMillis;
+        this.task = plugin.getTaskRunner().runRepeating("flush.schedule", () ->
+            plugin.getTaskRunner().runIoCoalesced("flush.write", this, () -> flushAll(isSyncDue())),
+            interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    /**
+     * Write every dirty record now on the calling thread
+     */
+    public void flushAll(boolean sync) {
+        for (Map.Entry<String, Target> entry : targets.entrySet()) {
+            try {
+                entry.getValue().flush(sync);
+            } catch (IOException | RuntimeException e) {
+                plugin.getLogger().atWarning().withCause(e).log("Failed to flush " + entry.getKey());
+            }
+        }
+        if (sync) {
+            lastSync = System.currentTimeMillis();
+        }
+    }
+
+    private boolean isSyncDue() {
+        return System.currentTimeMillis() - lastSync >= maxLossMillis;
+    }
+
+    @FunctionalInterface
+    public interface Target {
+
+        /**
+         * Write dirty records in one batch, sync to disk when asked
+         * Records that fail to write must stay dirty for the next flush
+         */
+        void flush(boolean sync) throws IOException;
+    }
+}
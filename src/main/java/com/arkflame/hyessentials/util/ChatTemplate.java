@@ -0,0 +1,110 @@
+package com.arkflame.hyessentials.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.arkflame.hyessentials.util.ColorCodec.Span;
+import com.arkflame.hyessentials.util.ColorCodec.Style;
+import com.hypixel.hytale.server.core.Message;
+
+/**
+ * ChatTemplate - Chat format parsed once into literal and placeholder segments
+ * Prefix and suffix are baked into the literals and their colour codes are parsed at compile
+ * time, only {player} and {message} are parsed per message, continuing in the style before them
+ */
+public final class ChatTemplate {
+    private static final int PLAYER = 0;
+    private static final int MESSAGE = 1;
+    
+    private final String format;
+    // Either a Literal or an Integer placeholder
+    private final Object[] segments;
+    private final int spanCount;
+    
+    private ChatTemplate(String format, Object[] segments, int spanCount) {
+        this.format = format;
+        this.segments = segments;
+        this.spanCount = spanCount;
+    }
+    
+    public static ChatTemplate compile(String format, String prefix, String suffix) {
+        List<Object> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        
+        int i = 0;
+        while (i < format.length()) {
+            char c = format.charAt(i);
+            if (c == '{') {
+                int end = format.indexOf('}', i);
+                if (end > 0) {
+                    String key = format.substring(i + 1, end);
+                    switch (key) {
+                        case "prefix" -> literal.append(prefix);
+                        case "suffix" -> literal.append(suffix);
+                        case "player", "message" -> {
+                            if (literal.length() > 0) {
+                                segments.add(literal.toString());
+                                literal.setLength(0);
+                            }
+                            segments.add(key.equals("player") ? PLAYER : MESSAGE);
+                        }
+                        default -> literal.append(format, i, end + 1);
+                    }
+                    i = end + 1;
+                    continue;
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+        
+        if (literal.length() > 0) {
+            segments.add(literal.toString());
+        }
+        
+        // Literals are parsed assuming placeholders leave the style as they found it
+        Style style = Style.PLAIN;
+        int spanCount = 0;
+        for (int j = 0; j < segments.size(); j++) {
+            if (segments.get(j) instanceof String text) {
+                List<Span> spans = new ArrayList<>();
+                Style end = ColorCodec.parse(text, style, spans);
+                segments.set(j, new Literal(text, style, List.copyOf(spans), end));
+                spanCount += spans.size();
+                style = end;
+            }
+        }
+        return new ChatTemplate(format, segments.toArray(), spanCount);
+    }
+    
+    /**
+     * Build the chat line, the message must already be filtered to the codes its sender may use
+     */
+    public Message render(String player, String message) {
+        List<Span> spans = new ArrayList<>(spanCount + 4);
+        Style style = Style.PLAIN;
+        for (Object segment : segments) {
+            if (segment instanceof Literal literal) {
+                if (literal.start().equals(style)) {
+                    spans.addAll(literal.spans());
+                    style = literal.end();
+                } else {
+                    // A placeholder changed the style, the literal after it has to follow suit
+                    style = ColorCodec.parse(literal.text(), style, spans);
+                }
+            } else {
+                style = ColorCodec.parse((Integer) segment == PLAYER ? player : message, style, spans);
+            }
+        }
+        return ColorCodec.build(spans);
+    }
+    
+    /**
+     * The config format this template was compiled from
+     */
+    public String getFormat() {
+        return format;
+    }
+    
+    private record Literal(String text, Style start, List<Span> spans, Style end) {}
+}
@@ -0,0 +1,252 @@
+package com.arkflame.hyessentials.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hypixel.hytale.server.core.Message;
+
+/**
+ * ColorCodec - Single pass codec for "&" colour codes
+ * Builds structured Message components directly instead of round tripping through "§" strings.
+ * Parsing yields immutable spans that can be kept and shared, Messages are mutable so every
+ * caller gets a fresh one built from them.
+ */
+public final class ColorCodec {
+    private static final String[] COLORS = {
+        "#000000", "#0000AA", "#00AA00", "#00AAAA", "#AA0000", "#AA00AA", "#FFAA00", "#AAAAAA",
+        "#555555", "#5555FF", "#55FF55", "#55FFFF", "#FF5555", "#FF55FF", "#FFFF55", "#FFFFFF"
+    };
+    
+    private static final int NONE = -1;
+    private static final int OBFUSCATED = 16;
+    private static final int BOLD = 17;
+    private static final int STRIKETHROUGH = 18;
+    private static final int UNDERLINE = 19;
+    private static final int ITALIC = 20;
+    private static final int RESET = 21;
+    
+    private static final int CACHE_SIZE = 256;
+    
+    // Only static text (MOTD, language entries) goes through the cache, least recently used falls out
+    private static final Map<String, List<Span>> CACHE = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Span>> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+    
+    private ColorCodec() {}
+    
+    /**
+     * A run of text in one style
+     */
+    public record Span(String text, Style style) {}
+    
+    /**
+     * Colour and formatting in effect at some point of the text
+     */
+    public record Style(String color, boolean bold, boolean italic) {
+        public static final Style PLAIN = new Style(null, false, false);
+    }
+    
+    /**
+     * Parse "&" (or "§") coded text into a Message tree
+     */
+    public static Message parse(String text) {
+        List<Span> spans = new ArrayList<>();
+        parse(text, Style.PLAIN, spans);
+        return build(spans);
+    }
+    
+    /**
+     * Parse text that continues in the given style, spans are appended and the style at the end is returned
+     */
+    public static Style parse(String text, Style start, List<Span> spans) {
+        StringBuilder run = new StringBuilder(text.length());
+        String color = start.color();
+        boolean bold = start.bold();
+        boolean italic = start.italic();
+        
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            int code = (c == '&' || c == '§') && i + 1 < length ? codeOf(text.charAt(i + 1)) : NONE;
+            if (code == NONE) {
+                run.append(c);
+                continue;
+            }
+            
+            flush(spans, run, color, bold, italic);
+            i++;
+            
+            if (code < OBFUSCATED) {
+                // A colour resets formatting, like the client does
+                color = COLORS[code];
+                bold = false;
+                italic = false;
+            } else if (code == BOLD) {
+                bold = true;
+            } else if (code == ITALIC) {
+                italic = true;
+            } else if (code == RESET) {
+                color = null;
+                bold = false;
+                italic = false;
+            }
+            // Obfuscated, strikethrough and underline have no Message equivalent and are dropped
+        }
+        flush(spans, run, color, bold, italic);
+        
+        Style end = new Style(color, bold, italic);
+        return end.equals(start) ? start : end;
+    }
+    
+    /**
+     * Build a new Message from spans, neighbours in the same style become one component
+     */
+    public static Message build(List<Span> spans) {
+        List<Message> parts = new ArrayList<>(spans.size());
+        StringBuilder run = new StringBuilder();
+        Style style = null;
+        for (Span span : spans) {
+            if (!span.style().equals(style)) {
+                addPart(parts, run, style);
+                style = span.style();
+            }
+            run.append(span.text());
+        }
+        addPart(parts, run, style);
+        
+        if (parts.isEmpty()) {
+            return Message.raw("");
+        }
+        return parts.size() == 1 ? parts.get(0) : Message.join(parts.toArray(new Message[0]));
+    }
+    
+    /**
+     * Parse static text once, every call still gets its own Message
+     */
+    public static Message parseCached(String text) {
+        List<Span> spans;
+        synchronized (CACHE) {
+            spans = CACHE.get(text);
+        }
+        if (spans == null) {
+            List<Span> parsed = new ArrayList<>();
+            parse(text, Style.PLAIN, parsed);
+            spans = List.copyOf(parsed);
+            synchronized (CACHE) {
+                CACHE.put(text, spans);
+            }
+        }
+        return build(spans);
+    }
+    
+    public static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+    
+    /**
+     * Remove every colour and formatting code
+     */
+    public static String strip(String text) {
+        return filter(text, false, false);
+    }
+    
+    /**
+     * Keep only the codes the sender may use, colours and formatting are allowed separately
+     */
+    public static String filter(String text, boolean allowColors, boolean allowFormats) {
+        int index = indexOfCodeChar(text);
+        if (index < 0 || (allowColors && allowFormats)) {
+            return text;
+        }
+        
+        StringBuilder builder = new StringBuilder(text.length());
+        builder.append(text, 0, index);
+        
+        int length = text.length();
+        for (int i = index; i < length; i++) {
+            char c = text.charAt(i);
+            int code = (c == '&' || c == '§') && i + 1 < length ? codeOf(text.charAt(i + 1)) : NONE;
+            if (code == NONE) {
+                builder.append(c);
+                continue;
+            }
+            
+            boolean allowed;
+            if (code < OBFUSCATED) {
+                allowed = allowColors;
+            } else if (code == RESET) {
+                allowed = allowColors || allowFormats;
+            } else {
+                allowed = allowFormats;
+            }
+            
+            if (allowed) {
+                builder.append(c).append(text.charAt(i + 1));
+            } else {
+                // A kept "&" would pair with whatever follows the dropped code, e.g. "&&cc" into "&c"
+                int end = builder.length();
+                while (end > 0 && isCodeChar(builder.charAt(end - 1))) {
+                    end--;
+                }
+                builder.setLength(end);
+            }
+            i++;
+        }
+        return builder.toString();
+    }
+    
+    private static void flush(List<Span> spans, StringBuilder run, String color, boolean bold, boolean italic) {
+        if (run.length() == 0) {
+            return;
+        }
+        spans.add(new Span(run.toString(), new Style(color, bold, italic)));
+        run.setLength(0);
+    }
+    
+    private static void addPart(List<Message> parts, StringBuilder run, Style style) {
+        if (run.length() == 0) {
+            return;
+        }
+        
+        Message part = Message.raw(run.toString());
+        if (style.color() != null) part.color(style.color());
+        if (style.bold()) part.bold(true);
+        if (style.italic()) part.italic(true);
+        parts.add(part);
+        run.setLength(0);
+    }
+    
+    private static boolean isCodeChar(char c) {
+        return c == '&' || c == '§';
+    }
+    
+    private static int indexOfCodeChar(String text) {
+        int amp = text.indexOf('&');
+        int section = text.indexOf('§');
+        if (amp < 0) return section;
+        if (section < 0) return amp;
+        return Math.min(amp, section);
+    }
+    
+    private static int codeOf(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return 10 + (c - 'a');
+        if (c >= 'A' && c <= 'F') return 10 + (c - 'A');
+        switch (Character.toLowerCase(c)) {
+            case 'k': return OBFUSCATED;
+            case 'l': return BOLD;
+            case 'm': return STRIKETHROUGH;
+            case 'n': return UNDERLINE;
+            case 'o': return ITALIC;
+            case 'r': return RESET;
+            default: return NONE;
+        }
+    }
+}
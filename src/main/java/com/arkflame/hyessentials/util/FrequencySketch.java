@@ -0,0 +1,87 @@
+package com.arkflame.hyessentials.util;
+
+/**
+ * FrequencySketch - Count-min sketch of 4 bit counters for TinyLFU admission
+ * Estimates how often a key was seen recently in a fixed amount of memory,
+ * every counter is halved once the sample period is reached so old popularity fades.
+ * Not thread safe, callers synchronize
+ */
+public final class FrequencySketch {
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private final long[] table;
+    private final int mask;
+    private final int samplePeriod;
+    private int additions;
+
+    public FrequencySketch(int expectedSize) {
+        int size = Integer.highestOneBit(Math.max(16, expectedSize) - 1) << 1;
+        this.table = new long[size];
+        this.mask = size - 1;
+        this.samplePeriod = 10 * size;
+    }
+
+    /**
+     * Count one occurrence of a key
+     */
+    public void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < 4; row++) {
+            added |= incrementAt(indexOf(hash, row), counterOffset(hash, row));
+        }
+        if (added && ++additions >= samplePeriod) {
+            reset();
+        }
+    }
+
+    /**
+     * Estimated occurrences of a key, at most 15
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < 4; row++) {
+            int index = indexOf(hash, row);
+            int count = (int) ((table[index] >>> counterOffset(hash, row)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    private boolean incrementAt(int index, int offset) {
+        long counterMask = 0xfL << offset;
+        if ((table[index] & counterMask) != counterMask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int counterOffset(int hash, int row) {
+        // 16 counters per word, each row picks one of its own 4
+        return ((row << 2) + ((hash >>> (row << 3)) & 3)) << 2;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+}
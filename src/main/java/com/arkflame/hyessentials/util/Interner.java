@@ -0,0 +1,66 @@
+package com.arkflame.hyessentials.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interner - Maps names to dense int ids handed out in registration order
+ * Ids are never reused, lookups are lock free and only new names take the lock.
+ */
+public final class Interner {
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names;
+    private volatile int size;
+
+    public Interner(int initialCapacity) {
+        this.names = new String[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * Get the id of a name, registering it if it was never seen before
+     */
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        return register(name);
+    }
+
+    /**
+     * Get the id of a name without registering it, -1 if unknown
+     */
+    public int lookup(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private synchronized int register(String name) {
+        Integer existing = ids.get(name);
+        if (existing != null) {
+            return existing;
+        }
+
+        int id = size;
+        String[] current = names;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = name;
+        names = current;
+        size = id + 1;
+
+        // Publish the name before the id becomes visible to readers
+        ids.put(name, id);
+        return id;
+    }
+}
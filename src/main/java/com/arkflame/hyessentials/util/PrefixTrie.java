@@ -0,0 +1,194 @@
+package com.arkflame.hyessentials.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * PrefixTrie - Case-insensitive set of names for completing what a player typed so far
+ * Names are matched lowercased but returned as they were added, names that differ only
+ * in case share a node. Completions come out in alphabetical order and the walk stops
+ * once the limit is reached, so a prefix costs its length plus the names it returns.
+ */
+public final class PrefixTrie {
+    private static final String[] NO_NAMES = new String[0];
+
+    private final Node root = new Node();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size;
+
+    public void add(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        lock.writeLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.childOrCreate(key.charAt(i));
+            }
+            if (node.addName(name)) {
+                size++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String name) {
+        String key = name.toLowerCase(Locale.ROOT);
+        lock.writeLock().lock();
+        try {
+            if (remove(root, key, 0, name)) {
+                size--;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to limit accepted names starting with the prefix, in alphabetical order
+     */
+    public List<String> complete(String prefix, int limit, Predicate<String> filter) {
+        List<String> result = new ArrayList<>(Math.min(limit, 16));
+        if (limit <= 0) {
+            return result;
+        }
+
+        String key = prefix.toLowerCase(Locale.ROOT);
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            if (node != null) {
+                collect(node, limit, filter, result);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    // Caller holds the read lock, false once the limit is reached
+    private static boolean collect(Node node, int limit, Predicate<String> filter, List<String> result) {
+        for (String name : node.names) {
+            if (filter.test(name)) {
+                result.add(name);
+                if (result.size() == limit) {
+                    return false;
+                }
+            }
+        }
+        for (int i = 0; i < node.childCount; i++) {
+            if (!collect(node.children[i], limit, filter, result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Caller holds the write lock, prunes nodes left without names on the way back
+    private static boolean remove(Node node, String key, int depth, String name) {
+        if (depth == key.length()) {
+            return node.removeName(name);
+        }
+        int index = node.indexOf(key.charAt(depth));
+        if (index < 0) {
+            return false;
+        }
+        Node child = node.children[index];
+        boolean removed = remove(child, key, depth + 1, name);
+        if (removed && child.isEmpty()) {
+            node.removeChild(index);
+        }
+        return removed;
+    }
+
+    private static final class Node {
+        // Sorted by character so a walk visits names in alphabetical order
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        int childCount;
+        String[] names = NO_NAMES;
+
+        Node child(char c) {
+            int index = indexOf(c);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int index = indexOf(c);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int insert = -index - 1;
+            if (childCount == keys.length) {
+                int capacity = Math.max(2, childCount * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            System.arraycopy(keys, insert, keys, insert + 1, childCount - insert);
+            System.arraycopy(children, insert, children, insert + 1, childCount - insert);
+            Node child = new Node();
+            keys[insert] = c;
+            children[insert] = child;
+            childCount++;
+            return child;
+        }
+
+        int indexOf(char c) {
+            return Arrays.binarySearch(keys, 0, childCount, c);
+        }
+
+        void removeChild(int index) {
+            System.arraycopy(keys, index + 1, keys, index, childCount - index - 1);
+            System.arraycopy(children, index + 1, children, index, childCount - index - 1);
+            childCount--;
+            children[childCount] = null;
+        }
+
+        boolean addName(String name) {
+            for (String existing : names) {
+                if (existing.equals(name)) {
+                    return false;
+                }
+            }
+            String[] grown = Arrays.copyOf(names, names.length + 1);
+            grown[names.length] = name;
+            Arrays.sort(grown);
+            names = grown;
+            return true;
+        }
+
+        boolean removeName(String name) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    String[] shrunk = new String[names.length - 1];
+                    System.arraycopy(names, 0, shrunk, 0, i);
+                    System.arraycopy(names, i + 1, shrunk, i, shrunk.length - i);
+                    names = shrunk.length == 0 ? NO_NAMES : shrunk;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isEmpty() {
+            return names.length == 0 && childCount == 0;
+        }
+    }
+}
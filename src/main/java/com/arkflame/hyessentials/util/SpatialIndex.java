@@ -0,0 +1,359 @@
+package com.arkflame.hyessentials.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import com.arkflame.hyessentials.data.Location;
+
+/**
+ * SpatialIndex - Uniform grid of locations per world for nearest and radius queries
+ * Cells are square columns on x and z, height only matters for the final distance.
+ * Queries visit the cells around the center, or every occupied cell when that is fewer,
+ * so their cost follows the entries nearby instead of the total.
+ */
+public final class SpatialIndex<K> {
+    private final int cellSize;
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    private final Map<Integer, Grid<K>> worlds = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public SpatialIndex(int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Add a key or move it to a new location
+     */
+    public void put(K key, Location location) {
+        lock.writeLock().lock();
+        try {
+            Entry<K> entry = entries.remove(key);
+            if (entry != null) {
+                unlink(entry);
+            }
+            entry = new Entry<>(key, location, cellX(location), cellZ(location));
+            entries.put(key, entry);
+            worlds.computeIfAbsent(location.getWorld(), k -> new Grid<>()).add(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(K key) {
+        lock.writeLock().lock();
+        try {
+            Entry<K> entry = entries.remove(key);
+            if (entry != null) {
+                unlink(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove every key the filter accepts, a full scan meant for bulk changes
+     */
+    public void removeIf(Predicate<K> filter) {
+        lock.writeLock().lock();
+        try {
+            entries.values().removeIf(entry -> {
+                if (filter.test(entry.key)) {
+                    unlink(entry);
+                    return true;
+                }
+                return false;
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Location get(K key) {
+        lock.readLock().lock();
+        try {
+            Entry<K> entry = entries.get(key);
+            return entry != null ? entry.location : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Every accepted entry within the radius of the center, closest first
+     */
+    public List<Match<K>> within(Location center, double radius, Predicate<K> filter) {
+        List<Match<K>> matches = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            visitWithin(center, radius, filter, match -> {
+                matches.add(match);
+                return true;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(Match.BY_DISTANCE);
+        return matches;
+    }
+
+    /**
+     * Any accepted entry within the radius, stops at the first one found, null if none
+     */
+    public Match<K> anyWithin(Location center, double radius, Predicate<K> filter) {
+        List<Match<K>> found = new ArrayList<>(1);
+        lock.readLock().lock();
+        try {
+            visitWithin(center, radius, filter, match -> {
+                found.add(match);
+                return false;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    /**
+     * Up to count accepted entries closest to the center in its world, closest first
+     */
+    public List<Match<K>> nearest(Location center, int count, Predicate<K> filter) {
+        if (count <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Worst of the best so far on top, replaced whenever something closer shows up
+        PriorityQueue<Match<K>> best = new PriorityQueue<>(count + 1, Match.BY_DISTANCE.reversed());
+        lock.readLock().lock();
+        try {
+            Grid<K> grid = worlds.get(center.getWorld());
+            if (grid != null) {
+                collectNearest(grid, center, count, filter, best);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Match<K>> matches = new ArrayList<>(best);
+        matches.sort(Match.BY_DISTANCE);
+        return matches;
+    }
+
+    // Caller holds the read lock
+    private void visitWithin(Location center, double radius, Predicate<K> filter, Predicate<Match<K>> visitor) {
+        Grid<K> grid = worlds.get(center.getWorld());
+        if (grid == null || radius < 0) {
+            return;
+        }
+
+        double radiusSquared = radius * radius;
+        int minX = Math.floorDiv((int) Math.floor(center.getX() - radius), cellSize);
+        int maxX = Math.floorDiv((int) Math.floor(center.getX() + radius), cellSize);
+        int minZ = Math.floorDiv((int) Math.floor(center.getZ() - radius), cellSize);
+        int maxZ = Math.floorDiv((int) Math.floor(center.getZ() + radius), cellSize);
+        long area = (long) (maxX - minX + 1) * (maxZ - minZ + 1);
+
+        if (area <= grid.cells.size()) {
+            for (int x = minX; x <= maxX; x++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    List<Entry<K>> cell = grid.cells.get(cellKey(x, z));
+                    if (cell != null && !visitCell(cell, center, radiusSquared, filter, visitor)) {
+                        return;
+                    }
+                }
+            }
+        } else {
+            // Sparse world, fewer occupied cells than cells in range
+            for (List<Entry<K>> cell : grid.cells.values()) {
+                Entry<K> first = cell.get(0);
+                if (first.cellX >= minX && first.cellX <= maxX && first.cellZ >= minZ && first.cellZ <= maxZ
+                        && !visitCell(cell, center, radiusSquared, filter, visitor)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private boolean visitCell(List<Entry<K>> cell, Location center, double radiusSquared,
+                              Predicate<K> filter, Predicate<Match<K>> visitor) {
+        for (Entry<K> entry : cell) {
+            double distanceSquared = center.distanceSquared(entry.location);
+            if (distanceSquared <= radiusSquared && filter.test(entry.key)
+                    && !visitor.test(new Match<>(entry.key, entry.location, distanceSquared))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Caller holds the read lock
+    private void collectNearest(Grid<K> grid, Location center, int count, Predicate<K> filter, PriorityQueue<Match<K>> best) {
+        int originX = cellX(center);
+        int originZ = cellZ(center);
+        int seen = 0;
+
+        // Rings of cells around the center, ring r can't hold anything closer than (r - 1) cells
+        for (int ring = 0; seen < grid.size; ring++) {
+            if (best.size() == count) {
+                double bound = (ring - 1) * (double) cellSize;
+                if (bound > 0 && bound * bound > best.peek().distanceSquared()) {
+                    return;
+                }
+            }
+
+            long side = 2L * ring + 1;
+            if (side * side > grid.cells.size()) {
+                // Walking on would cost more lookups than the world has occupied cells, scan those instead
+                for (List<Entry<K>> cell : grid.cells.values()) {
+                    Entry<K> first = cell.get(0);
+                    if (Math.max(Math.abs(first.cellX - originX), Math.abs(first.cellZ - originZ)) >= ring) {
+                        offerCell(cell, center, count, filter, best);
+                    }
+                }
+                return;
+            }
+
+            for (int x = originX - ring; x <= originX + ring; x++) {
+                boolean edge = x == originX - ring || x == originX + ring;
+                int step = edge ? 1 : Math.max(1, 2 * ring);
+                for (int z = originZ - ring; z <= originZ + ring; z += step) {
+                    List<Entry<K>> cell = grid.cells.get(cellKey(x, z));
+                    if (cell != null) {
+                        seen += cell.size();
+                        offerCell(cell, center, count, filter, best);
+                    }
+                }
+            }
+        }
+    }
+
+    private void offerCell(List<Entry<K>> cell, Location center, int count, Predicate<K> filter, PriorityQueue<Match<K>> best) {
+        for (Entry<K> entry : cell) {
+            double distanceSquared = center.distanceSquared(entry.location);
+            if (best.size() == count && distanceSquared >= best.peek().distanceSquared()) {
+                continue;
+            }
+            if (!filter.test(entry.key)) {
+                continue;
+            }
+            best.offer(new Match<>(entry.key, entry.location, distanceSquared));
+            if (best.size() > count) {
+                best.poll();
+            }
+        }
+    }
+
+    // Caller holds the write lock
+    private void unlink(Entry<K> entry) {
+        Grid<K> grid = worlds.get(entry.location.getWorld());
+        grid.remove(entry);
+        if (grid.size == 0) {
+            worlds.remove(entry.location.getWorld());
+        }
+    }
+
+    private int cellX(Location location) {
+        return Math.floorDiv(location.getBlockX(), cellSize);
+    }
+
+    private int cellZ(Location location) {
+        return Math.floorDiv(location.getBlockZ(), cellSize);
+    }
+
+    private static long cellKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    /**
+     * An entry found by a query with its distance to the center in blocks
+     */
+    public static final class Match<K> {
+        static final Comparator<Match<?>> BY_DISTANCE = Comparator.comparingDouble(match -> match.distanceSquared);
+
+        private final K key;
+        private final Location location;
+        private final double distanceSquared;
+
+        Match(K key, Location location, double distanceSquared) {
+            this.key = key;
+            this.location = location;
+            this.distanceSquared = distanceSquared;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public Location getLocation() {
+            return location;
+        }
+
+        public double getDistance() {
+            return Math.sqrt(distanceSquared);
+        }
+
+        double distanceSquared() {
+            return distanceSquared;
+        }
+    }
+
+    private static final class Entry<K> {
+        final K key;
+        final Location location;
+        final int cellX;
+        final int cellZ;
+        // Position inside its cell list, kept current so removal is a swap with the last one
+        int slot;
+
+        Entry(K key, Location location, int cellX, int cellZ) {
+            this.key = key;
+            this.location = location;
+            this.cellX = cellX;
+            this.cellZ = cellZ;
+        }
+    }
+
+    private static final class Grid<K> {
+        final Map<Long, List<Entry<K>>> cells = new HashMap<>();
+        int size;
+
+        void add(Entry<K> entry) {
+            List<Entry<K>> cell = cells.computeIfAbsent(cellKey(entry.cellX, entry.cellZ), k -> new ArrayList<>(4));
+            entry.slot = cell.size();
+            cell.add(entry);
+            size++;
+        }
+
+        void remove(Entry<K> entry) {
+            long key = cellKey(entry.cellX, entry.cellZ);
+            List<Entry<K>> cell = cells.get(key);
+            Entry<K> last = cell.remove(cell.size() - 1);
+            if (last != entry) {
+                last.slot = entry.slot;
+                cell.set(entry.slot, last);
+            }
+            if (cell.isEmpty()) {
+                cells.remove(key);
+            }
+            size--;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.arkflame.hyessentials.util;
+
+/**
+ * WorldRegistry - Interns world names into dense int ids
+ * Ids only live as long as the process, anything persisted stores the name
+ */
+public final class WorldRegistry {
+    /** Id of a location whose world is not known */
+    public static final int UNKNOWN = -1;
+
+    private static final WorldRegistry INSTANCE = new WorldRegistry();
+
+    private final Interner worlds = new Interner(16);
+
+    private WorldRegistry() {}
+
+    public static WorldRegistry get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the id of a world, registering it if it was never seen before
+     */
+    public int intern(String world) {
+        return world == null ? UNKNOWN : worlds.intern(world);
+    }
+
+    /**
+     * Name of a world id, null for UNKNOWN
+     */
+    public String nameOf(int id) {
+        return id == UNKNOWN ? null : worlds.nameOf(id);
+    }
+
+    public int size() {
+        return worlds.size();
+    }
+}
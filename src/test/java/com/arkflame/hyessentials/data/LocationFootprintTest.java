@@ -0,0 +1,138 @@
+package com.arkflame.hyessentials.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.junit.jupiter.api.Test;
+
+import com.arkflame.hyessentials.util.WorldRegistry;
+import com.hypixel.hytale.builtin.hytalegenerator.fields.FastNoiseLite.Vector3;
+
+class LocationFootprintTest {
+    private static final int COUNT = 100_000;
+
+    private final int world = WorldRegistry.get().intern("world");
+
+    @Test
+    void coordinatesEncodeInSixteenBytes() throws IOException {
+        Location location = Location.of(world, 1234.5, 64, -98765.25, 90f, -45f);
+
+        ByteArrayOutputStream coordinates = new ByteArrayOutputStream();
+        location.writeCoordinates(new DataOutputStream(coordinates));
+        assertEquals(16, coordinates.size());
+
+        // Presence flag, UTF length and "world" on top of the coordinates
+        ByteArrayOutputStream full = new ByteArrayOutputStream();
+        location.write(new DataOutputStream(full));
+        assertEquals(1 + 2 + 5 + 16, full.size());
+
+        Location read = Location.read(new DataInputStream(new ByteArrayInputStream(full.toByteArray())));
+        assertEquals(location, read);
+        assertEquals("world", read.getWorldName());
+    }
+
+    @Test
+    void rotationKeepsItsPrecision() {
+        float step = 360f / 65536f;
+        for (float yaw = 0; yaw < 360; yaw += 7.3f) {
+            for (float pitch = -90; pitch <= 90; pitch += 11.1f) {
+                Location location = Location.of(world, 0, 0, 0, yaw, pitch);
+                assertEquals(yaw, location.getYaw(), step, "yaw " + yaw);
+                assertEquals(pitch, location.getPitch(), step, "pitch " + pitch);
+            }
+        }
+    }
+
+    @Test
+    void locationIsFiveIntsOnTheHeap() {
+        long perLocation = bytesPerLocation();
+
+        // 12 byte header and 20 bytes of fields with compressed headers, 40 without
+        assertTrue(perLocation <= 40, "measured " + perLocation + " bytes per location");
+    }
+
+    @Test
+    void homesTakeLessThanVectors() {
+        // Homes used to be kept as Vector3 values in the same maps, so the entries themselves are unchanged
+        long perVector = bytesPerVector();
+        long perLocation = bytesPerLocation();
+        long savedPerMillion = (perVector - perLocation) * 1_000_000;
+
+        System.out.printf("Vector3 %d B, Location %d B, %.1f MB saved per million homes%n",
+            perVector, perLocation, savedPerMillion / 1e6);
+        // The Location also carries the world and rotation the Vector3 didn't have
+        assertTrue(perLocation < perVector, "Vector3 " + perVector + " B, Location " + perLocation + " B");
+    }
+
+    @Test
+    void backHistoryPushAllocatesNothing() {
+        assumeAllocationCounter();
+        BackHistory history = new BackHistory(16);
+        Location location = Location.of(world, 10, 70, -10, 180f, 30f);
+        for (int i = 0; i < COUNT; i++) {
+            history.push(location);
+        }
+
+        long before = allocatedBytes();
+        for (int i = 0; i < COUNT; i++) {
+            history.push(location);
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertTrue(allocated < 1024, "measured " + allocated + " bytes for " + COUNT + " pushes");
+        assertEquals(location, history.peek());
+    }
+
+    private long bytesPerLocation() {
+        assumeAllocationCounter();
+        Location[] kept = new Location[COUNT];
+        // Warm up so the measured loop runs compiled and allocates nothing else
+        fillLocations(kept);
+
+        long before = allocatedBytes();
+        fillLocations(kept);
+        return (allocatedBytes() - before) / COUNT;
+    }
+
+    private long bytesPerVector() {
+        assumeAllocationCounter();
+        Vector3[] kept = new Vector3[COUNT];
+        fillVectors(kept);
+
+        long before = allocatedBytes();
+        fillVectors(kept);
+        return (allocatedBytes() - before) / COUNT;
+    }
+
+    private void fillLocations(Location[] kept) {
+        for (int i = 0; i < kept.length; i++) {
+            kept[i] = Location.of(world, i, 64, -i, i % 360, 0f);
+        }
+    }
+
+    private static void fillVectors(Vector3[] kept) {
+        for (int i = 0; i < kept.length; i++) {
+            kept[i] = new Vector3(i, 64, -i);
+        }
+    }
+
+    // Per thread allocation counting is a HotSpot extension
+    private static void assumeAllocationCounter() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean hotspot && hotspot.isThreadAllocatedMemorySupported()
+            && hotspot.isThreadAllocatedMemoryEnabled(), "thread allocation counter not available");
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
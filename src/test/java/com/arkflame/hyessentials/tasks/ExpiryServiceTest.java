@@ -0,0 +1,107 @@
+package com.arkflame.hyessentials.tasks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class ExpiryServiceTest {
+
+    // One millisecond per tick so delays read as tick counts
+    private final ExpiryService service = new ExpiryService(1, t -> {
+        throw new AssertionError(t);
+    });
+
+    private long scheduleAt(long delay, List<Long> fired) {
+        service.schedule(delay, TimeUnit.MILLISECONDS, () -> fired.add(service.getCurrentTick()));
+        return service.getCurrentTick() + delay;
+    }
+
+    @Test
+    void firesExactlyAtCascadeBoundaries() {
+        long[] delays = {
+            1, 2, 63, 64, 65, 127, 128, 129,
+            4095, 4096, 4097, 262143, 262144, 262145,
+            ExpiryService.MAX_SPAN - 1, ExpiryService.MAX_SPAN
+        };
+        // Start off a wheel boundary so slots don't line up with the delays
+        service.advanceTo(70);
+
+        for (long delay : delays) {
+            List<Long> fired = new ArrayList<>();
+            long deadline = scheduleAt(delay, fired);
+            service.advanceTo(deadline - 1);
+            assertTrue(fired.isEmpty(), "delay " + delay + " fired early at " + fired);
+            service.advanceTo(deadline);
+            assertEquals(List.of(deadline), fired, "delay " + delay);
+        }
+        assertEquals(0, service.size());
+    }
+
+    @Test
+    void firesOnTheTickAHigherWheelCascades() {
+        // Deadlines that are multiples of a wheel's range come down in the cascade of their own tick
+        long[] boundaries = {128, 192, 4096, 8192, 262144, 524288, 1L << 24};
+        service.advanceTo(70);
+
+        for (long boundary : boundaries) {
+            List<Long> fired = new ArrayList<>();
+            long deadline = scheduleAt(boundary - service.getCurrentTick(), fired);
+            assertEquals(boundary, deadline);
+            service.advanceTo(boundary);
+            assertEquals(List.of(boundary), fired, "boundary " + boundary);
+            service.advanceTo(boundary + 1);
+        }
+    }
+
+    @Test
+    void deadlinesBeyondTheWheelSpanAreNotCutShort() {
+        List<Long> fired = new ArrayList<>();
+        service.advanceTo(3);
+        long justPast = scheduleAt(ExpiryService.MAX_SPAN + 1, fired);
+        long farOut = scheduleAt(3 * ExpiryService.MAX_SPAN + 12345, fired);
+
+        service.advanceTo(justPast - 1);
+        assertTrue(fired.isEmpty(), "fired early at " + fired);
+        service.advanceTo(justPast);
+        assertEquals(List.of(justPast), fired);
+
+        service.advanceTo(farOut - 1);
+        assertEquals(1, fired.size(), "fired early at " + fired);
+        assertEquals(1, service.size());
+        service.advanceTo(farOut);
+        assertEquals(List.of(justPast, farOut), fired);
+        assertEquals(0, service.size());
+    }
+
+    @Test
+    void cancelledTimeoutsNeverFire() {
+        List<Long> fired = new ArrayList<>();
+        ExpiryService.Timeout near = service.schedule(10, TimeUnit.MILLISECONDS, () -> fired.add(10L));
+        ExpiryService.Timeout far = service.schedule(ExpiryService.MAX_SPAN + 100, TimeUnit.MILLISECONDS, () -> fired.add(-1L));
+        assertEquals(2, service.size());
+
+        assertTrue(near.cancel());
+        assertFalse(near.cancel());
+        service.advanceTo(ExpiryService.MAX_SPAN + 1);
+        // Parked entries stay cancellable after being placed again
+        assertTrue(far.cancel());
+        service.advanceTo(ExpiryService.MAX_SPAN + 200);
+
+        assertTrue(fired.isEmpty());
+        assertEquals(0, service.size());
+    }
+
+    @Test
+    void callbacksMayScheduleMore() {
+        List<Long> fired = new ArrayList<>();
+        service.schedule(5, TimeUnit.MILLISECONDS, () -> scheduleAt(64, fired));
+        service.advanceTo(5 + 64);
+        assertEquals(List.of(69L), fired);
+    }
+}
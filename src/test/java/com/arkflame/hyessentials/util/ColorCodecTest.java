@@ -0,0 +1,38 @@
+package com.arkflame.hyessentials.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class ColorCodecTest {
+
+    @Test
+    void droppedCodesDoNotFormNewOnes() {
+        assertEquals("c", ColorCodec.filter("&&cc", false, false));
+        assertEquals("c", ColorCodec.filter("&&&cc", false, false));
+        assertEquals("c", ColorCodec.filter("&§cc", false, false));
+        assertEquals("l", ColorCodec.filter("&&ll", true, false));
+        assertEquals("hi c", ColorCodec.filter("hi &&cc", false, true));
+    }
+
+    @Test
+    void allowedCodesAreKept() {
+        assertEquals("&&cc", ColorCodec.filter("&&cc", true, false));
+        assertEquals("&&lhi", ColorCodec.filter("&&lhi", false, true));
+        assertEquals("&chi", ColorCodec.filter("&c&lhi", true, false));
+        assertEquals("&lhi", ColorCodec.filter("&c&lhi", false, true));
+    }
+
+    @Test
+    void literalAmpersandsSurvive() {
+        assertEquals("fish & chips", ColorCodec.filter("fish & chips", false, false));
+        assertEquals("a && b", ColorCodec.filter("a && b", false, false));
+        assertEquals("&", ColorCodec.filter("&", false, false));
+    }
+
+    @Test
+    void stripRemovesEveryCode() {
+        assertEquals("c", ColorCodec.strip("&&cc"));
+        assertEquals("hello world", ColorCodec.strip("&a&lhello &rworld"));
+    }
+}